@@ -0,0 +1,180 @@
+package com.teocci.ytinbg.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import com.teocci.ytinbg.model.YouTubePlaylist;
+import com.teocci.ytinbg.model.YouTubeVideo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Seeds a database with the schema of version 1, the first released one, and upgrades it to
+ * the current version. The data has to survive and the lookups of the app have to use an
+ * index. The lookup times before and after the upgrade are logged.
+ */
+public class YouTubeSqlDbMigrationCase extends InstrumentationTestCase
+{
+    private static final String TAG = "YouTubeSqlDb Migration";
+
+    private static final String TEST_DATABASE_NAME = "YouTubeDbMigrationTest.db";
+    private static final int VIDEOS = 5000;
+    private static final int PLAYLISTS = 50;
+    private static final int LOOKUPS = 500;
+
+    // The schema as version 1 created it
+    private static final String[] VERSION_1_SCHEMA = {
+            "CREATE TABLE favorites_videos(_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    "video_id TEXT NOT NULL UNIQUE,title TEXT NOT NULL,duration TEXT," +
+                    "thumbnail_url TEXT,views_number TEXT)",
+            "CREATE TABLE recently_watched_videos(_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    "video_id TEXT NOT NULL UNIQUE,title TEXT NOT NULL,duration TEXT," +
+                    "thumbnail_url TEXT,views_number TEXT)",
+            "CREATE TABLE playlistModel(_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    "playlist_id TEXT NOT NULL UNIQUE,title TEXT NOT NULL,videos_number INTEGER," +
+                    "thumbnail_url TEXT,status TEXT);"
+    };
+
+    private Context context;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        context = getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DATABASE_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        YouTubeSqlDb.getInstance().init(context);
+        context.deleteDatabase(TEST_DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testUpgradeKeepsDataAndUsesIndexes() throws Throwable
+    {
+        seedVersion1();
+
+        SQLiteDatabase db = context.openOrCreateDatabase(TEST_DATABASE_NAME,
+                Context.MODE_PRIVATE, null);
+        long before = timeLookups(db);
+        db.close();
+
+        long start = System.nanoTime();
+        YouTubeSqlDb.getInstance().init(context, TEST_DATABASE_NAME);
+        long migration = System.nanoTime() - start;
+
+        YouTubeSqlDb youTubeSqlDb = YouTubeSqlDb.getInstance();
+        assertEquals(VIDEOS, youTubeSqlDb.videos(YouTubeSqlDb.VIDEOS_TYPE.FAVORITE).readAll().size());
+        assertEquals(VIDEOS, youTubeSqlDb.videos(YouTubeSqlDb.VIDEOS_TYPE.RECENTLY_WATCHED)
+                .readAll().size());
+        assertEquals(PLAYLISTS, youTubeSqlDb.playlistModel().readAll().size());
+        assertFalse(youTubeSqlDb.playlistModel().isEmpty());
+        assertTrue(youTubeSqlDb.videos(YouTubeSqlDb.VIDEOS_TYPE.FAVORITE)
+                .checkIfExists(videoId(VIDEOS - 1)));
+
+        // The tables added by the upgrade work
+        List<YouTubeVideo> items = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            items.add(new YouTubeVideo(videoId(i), "Video " + i, null, "3:00", null));
+        }
+        assertNull(youTubeSqlDb.playlistModel().readItemsEtag(playlistId(0)));
+        assertTrue(youTubeSqlDb.playlistItems().replace(playlistId(0), items, "etag"));
+        assertEquals(items.size(), youTubeSqlDb.playlistItems().read(playlistId(0)).size());
+        assertEquals("etag", youTubeSqlDb.playlistModel().readItemsEtag(playlistId(0)));
+        // The same items only take the new ETag
+        assertFalse(youTubeSqlDb.playlistItems().replace(playlistId(0), items, "etag2"));
+        assertEquals("etag2", youTubeSqlDb.playlistModel().readItemsEtag(playlistId(0)));
+
+        List<YouTubePlaylist> playlists = youTubeSqlDb.playlistModel().readAll();
+        for (YouTubePlaylist playlist : playlists) {
+            playlist.setEtag("etag");
+        }
+        // The first sync writes the new columns, the second one finds nothing to do
+        assertTrue(youTubeSqlDb.playlistModel().sync(playlists));
+        assertFalse(youTubeSqlDb.playlistModel().sync(youTubeSqlDb.playlistModel().readAll()));
+        assertEquals(PLAYLISTS, youTubeSqlDb.playlistModel().readAll().size());
+
+        db = context.openOrCreateDatabase(TEST_DATABASE_NAME, Context.MODE_PRIVATE, null);
+        assertEquals(YouTubeSqlDb.DATABASE_VERSION, db.getVersion());
+        assertUsesIndex(db, "SELECT COUNT(*) FROM favorites_videos WHERE video_id=?");
+        assertUsesIndex(db, "SELECT COUNT(*) FROM recently_watched_videos WHERE video_id=?");
+        assertUsesIndex(db, "SELECT * FROM playlistModel WHERE playlist_id=?");
+        assertUsesIndex(db, "SELECT * FROM playlist_items WHERE playlist_id=? ORDER BY position");
+        long after = timeLookups(db);
+        db.close();
+
+        Log.d(TAG, "Upgrade of " + VIDEOS + " videos took " + migration / 1000000 + " ms");
+        Log.d(TAG, LOOKUPS + " lookups took " + before / 1000 + " us before and "
+                + after / 1000 + " us after the upgrade");
+    }
+
+    private void seedVersion1()
+    {
+        SQLiteDatabase db = context.openOrCreateDatabase(TEST_DATABASE_NAME,
+                Context.MODE_PRIVATE, null);
+        db.beginTransaction();
+        try {
+            for (String statement : VERSION_1_SCHEMA) {
+                db.execSQL(statement);
+            }
+            for (int i = 0; i < VIDEOS; i++) {
+                Object[] video = {videoId(i), "Video " + i, "3:00", "", "1000"};
+                db.execSQL("INSERT INTO favorites_videos(video_id,title,duration,thumbnail_url," +
+                        "views_number) VALUES (?,?,?,?,?)", video);
+                db.execSQL("INSERT INTO recently_watched_videos(video_id,title,duration," +
+                        "thumbnail_url,views_number) VALUES (?,?,?,?,?)", video);
+            }
+            for (int i = 0; i < PLAYLISTS; i++) {
+                db.execSQL("INSERT INTO playlistModel(playlist_id,title,videos_number," +
+                        "thumbnail_url,status) VALUES (?,?,?,?,?)",
+                        new Object[]{playlistId(i), "Playlist " + i, 10, "", "public"});
+            }
+            db.setVersion(1);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.close();
+    }
+
+    private long timeLookups(SQLiteDatabase db)
+    {
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            String videoId = videoId((i * 7919) % VIDEOS);
+            assertEquals(1, DatabaseUtils.queryNumEntries(db, "favorites_videos", "video_id=?",
+                    new String[]{videoId}));
+        }
+        return System.nanoTime() - start;
+    }
+
+    private void assertUsesIndex(SQLiteDatabase db, String query)
+    {
+        Cursor c = db.rawQuery("EXPLAIN QUERY PLAN " + query, new String[]{"x"});
+        StringBuilder plan = new StringBuilder();
+        while (c.moveToNext()) {
+            plan.append(c.getString(c.getColumnCount() - 1)).append('\n');
+        }
+        c.close();
+        assertTrue("No index used by " + query + ":\n" + plan,
+                plan.toString().contains("INDEX") && !plan.toString().contains("SCAN"));
+    }
+
+    private static String videoId(int i)
+    {
+        return String.format("video%06d", i);
+    }
+
+    private static String playlistId(int i)
+    {
+        return String.format("PL%06d", i);
+    }
+}
@@ -31,6 +31,7 @@ import android.widget.Toast;
 import com.squareup.picasso.Picasso;
 import com.squareup.picasso.Target;
 import com.teocci.ytinbg.model.YouTubeVideo;
+import com.teocci.ytinbg.playback.StreamSelector;
 import com.teocci.ytinbg.receivers.MediaButtonIntentReceiver;
 import com.teocci.ytinbg.ui.MainActivity;
 import com.teocci.ytinbg.utils.Config;
@@ -70,23 +71,12 @@ public class BackgroundAudioService extends Service implements AudioManager.OnAu
     // we have full audio focus
     private static final int AUDIO_FOCUSED = 2;
 
-    private static final int YOUTUBE_ITAG_251 = 251;    // webm - stereo, 48 KHz 160 Kbps (opus)
-    private static final int YOUTUBE_ITAG_250 = 250;    // webm - stereo, 48 KHz 64 Kbps (opus)
-    private static final int YOUTUBE_ITAG_249 = 249;    // webm - stereo, 48 KHz 48 Kbps (opus)
-    private static final int YOUTUBE_ITAG_171 = 171;    // webm - stereo, 48 KHz 128 Kbps (vortis)
-    private static final int YOUTUBE_ITAG_141 = 141;    // mp4a - stereo, 44.1 KHz 256 Kbps (aac)
-    private static final int YOUTUBE_ITAG_140 = 140;    // mp4a - stereo, 44.1 KHz 128 Kbps (aac)
-    private static final int YOUTUBE_ITAG_43 = 43;      // webm - stereo, 44.1 KHz 128 Kbps (vortis)
-    private static final int YOUTUBE_ITAG_22 = 22;      // mp4 - stereo, 44.1 KHz 192 Kbps (aac)
-    private static final int YOUTUBE_ITAG_18 = 18;      // mp4 - stereo, 44.1 KHz 96 Kbps (aac)
-    private static final int YOUTUBE_ITAG_36 = 36;      // mp4 - stereo, 44.1 KHz 32 Kbps (aac)
-    private static final int YOUTUBE_ITAG_17 = 17;      // mp4 - stereo, 44.1 KHz 24 Kbps (aac)
-
     public static final String ACTION_PLAY = "action_play";
     public static final String ACTION_PAUSE = "action_pause";
     public static final String ACTION_NEXT = "action_next";
     public static final String ACTION_PREVIOUS = "action_previous";
     public static final String ACTION_STOP = "action_stop";
+    public static final String ACTION_APPEND = "action_append";
 
     public static final String MODE_REPEAT_ONE = "mode_repeat_one";
     public static final String MODE_REPEAT_ALL = "mode_repeat_all";
@@ -448,6 +438,8 @@ public class BackgroundAudioService extends Service implements AudioManager.OnAu
             mediaController.getTransportControls().skipToNext();
         } else if (action.equalsIgnoreCase(ACTION_STOP)) {
             mediaController.getTransportControls().stop();
+        } else if (action.equalsIgnoreCase(ACTION_APPEND)) {
+            appendMedia(intent);
         }
     }
 
@@ -487,6 +479,29 @@ public class BackgroundAudioService extends Service implements AudioManager.OnAu
         }
     }
 
+    /**
+     * Appends the videos of a further page to the playlist being played, the playback goes on
+     * with the current video.
+     *
+     * @param intent provides the videos
+     */
+    private void appendMedia(Intent intent)
+    {
+        // The user started something else meanwhile
+        if (mediaType != Config.YOUTUBE_MEDIA_TYPE_PLAYLIST || youTubeVideos == null) return;
+
+        ArrayList<YouTubeVideo> videos = (ArrayList<YouTubeVideo>) intent.getSerializableExtra(Config.KEY_YOUTUBE_TYPE_PLAYLIST);
+        if (videos == null || videos.isEmpty()) return;
+
+        // The iterator would fail after the list changed, it is recreated at the same place
+        int nextIndex = iterator != null ? iterator.nextIndex() : -1;
+        youTubeVideos.addAll(videos);
+        if (nextIndex >= 0) {
+            iterator = youTubeVideos.listIterator(nextIndex);
+        }
+        LogHelper.d(TAG, "Appended videos: ", videos.size(), ", playlist size: ", youTubeVideos.size());
+    }
+
     /**
      * Builds notification panel with buttons and info on it
      *
@@ -871,8 +886,7 @@ public class BackgroundAudioService extends Service implements AudioManager.OnAu
                 }
 
                 if (ytFiles != null) {
-                    YtFile ytFile = getBestStream(ytFiles);
-                    LogHelper.e(TAG, ytFile.getUrl());
+                    YtFile ytFile = StreamSelector.selectStream(BackgroundAudioService.this, ytFiles);
                     if (ytFile != null && validateUrl(ytFile.getUrl())) {
                         playOnFocusGain = true;
                         currentPosition = 0;
@@ -944,7 +958,7 @@ public class BackgroundAudioService extends Service implements AudioManager.OnAu
                                         SparseArray<YtFile> ytFiles)
             {
                 if (ytFiles != null) {
-                    YtFile ytFile = getBestStream(ytFiles);
+                    YtFile ytFile = StreamSelector.selectStream(BackgroundAudioService.this, ytFiles);
 
                     playOnFocusGain = true;
                     currentPosition = 0;
@@ -996,51 +1010,6 @@ public class BackgroundAudioService extends Service implements AudioManager.OnAu
         ytEx.execute(youtubeLink);
     }
 
-    /**
-     * Get the best available audio stream
-     *
-     * @param ytFiles Array of available streams
-     * @return Audio stream with highest bitrate
-     */
-    private YtFile getBestStream(SparseArray<YtFile> ytFiles)
-    {
-        Log.e(TAG, "ytFiles: " + ytFiles);
-        if (ytFiles.get(YOUTUBE_ITAG_141) != null) {
-            LogHelper.e(TAG, " gets YOUTUBE_ITAG_141");
-            return ytFiles.get(YOUTUBE_ITAG_141);
-        } else if (ytFiles.get(YOUTUBE_ITAG_140) != null) {
-            LogHelper.e(TAG, " gets YOUTUBE_ITAG_140");
-            return ytFiles.get(YOUTUBE_ITAG_140);
-        } else if (ytFiles.get(YOUTUBE_ITAG_251) != null) {
-            LogHelper.e(TAG, " gets YOUTUBE_ITAG_251");
-            return ytFiles.get(YOUTUBE_ITAG_251);
-        } else if (ytFiles.get(YOUTUBE_ITAG_250) != null) {
-            LogHelper.e(TAG, " gets YOUTUBE_ITAG_250");
-            return ytFiles.get(YOUTUBE_ITAG_250);
-        } else if (ytFiles.get(YOUTUBE_ITAG_249) != null) {
-            LogHelper.e(TAG, " gets YOUTUBE_ITAG_249");
-            return ytFiles.get(YOUTUBE_ITAG_249);
-        } else if (ytFiles.get(YOUTUBE_ITAG_171) != null) {
-            LogHelper.e(TAG, " gets YOUTUBE_ITAG_171");
-            return ytFiles.get(YOUTUBE_ITAG_171);
-        } else if (ytFiles.get(YOUTUBE_ITAG_18) != null) {
-            LogHelper.e(TAG, " gets YOUTUBE_ITAG_18");
-            return ytFiles.get(YOUTUBE_ITAG_18);
-        } else if (ytFiles.get(YOUTUBE_ITAG_22) != null) {
-            LogHelper.e(TAG, " gets YOUTUBE_ITAG_22");
-            return ytFiles.get(YOUTUBE_ITAG_22);
-        } else if (ytFiles.get(YOUTUBE_ITAG_43) != null) {
-            LogHelper.e(TAG, " gets YOUTUBE_ITAG_43");
-            return ytFiles.get(YOUTUBE_ITAG_43);
-        } else if (ytFiles.get(YOUTUBE_ITAG_36) != null) {
-            LogHelper.e(TAG, " gets YOUTUBE_ITAG_36");
-            return ytFiles.get(YOUTUBE_ITAG_36);
-        }
-
-        LogHelper.e(TAG, " gets YOUTUBE_ITAG_17");
-        return ytFiles.get(YOUTUBE_ITAG_17);
-    }
-
     private void startPlayback(SparseArray<YtFile> ytFiles)
     {
 
@@ -25,6 +25,7 @@ import com.teocci.ytinbg.model.YouTubeVideo;
 import com.teocci.ytinbg.playback.LocalPlayback;
 import com.teocci.ytinbg.playback.PlaybackManager;
 import com.teocci.ytinbg.playback.QueueManager;
+import com.teocci.ytinbg.playback.QueuePrefetcher;
 import com.teocci.ytinbg.receivers.MediaButtonIntentReceiver;
 import com.teocci.ytinbg.utils.Config;
 import com.teocci.ytinbg.utils.LogHelper;
@@ -278,6 +279,7 @@ public class BackgroundExoAudioService extends Service implements
 
         LocalPlayback playback = new LocalPlayback(this);
         mPlaybackManager = new PlaybackManager(this, getResources(), queueManager, playback);
+        mPlaybackManager.setQueuePrefetcher(new QueuePrefetcher(this));
 
         mediaSession = new MediaSessionCompat(
                 context,
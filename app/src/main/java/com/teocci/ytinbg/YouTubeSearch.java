@@ -34,6 +34,7 @@ import com.teocci.ytinbg.model.YouTubeVideo;
 import com.teocci.ytinbg.utils.Auth;
 import com.teocci.ytinbg.utils.Config;
 import com.teocci.ytinbg.utils.LogHelper;
+import com.teocci.ytinbg.utils.NetworkExecutor;
 import com.teocci.ytinbg.utils.Utils;
 
 import java.io.IOException;
@@ -155,8 +156,10 @@ public class YouTubeSearch
      */
     public void searchVideos(final String keywords)
     {
-        new Thread()
+        NetworkExecutor.getInstance().execute(NetworkExecutor.PRIORITY_SEARCH,
+                NetworkExecutor.REQUEST_SEARCH, new Runnable()
         {
+            @Override
             public void run()
             {
                 try {
@@ -265,7 +268,7 @@ public class YouTubeSearch
                     return;
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -277,8 +280,10 @@ public class YouTubeSearch
     public void searchNextVideos(final String keywords, final String nextPageToken)
     {
         if (nextPageToken == null) return;
-        new Thread()
+        NetworkExecutor.getInstance().execute(NetworkExecutor.PRIORITY_SEARCH,
+                NetworkExecutor.REQUEST_SEARCH, new Runnable()
         {
+            @Override
             public void run()
             {
                 try {
@@ -387,7 +392,7 @@ public class YouTubeSearch
                     return;
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -400,8 +405,10 @@ public class YouTubeSearch
         }
         credential.setSelectedAccountName(chosenAccountName);
 
-        new Thread()
+        NetworkExecutor.getInstance().execute(NetworkExecutor.PRIORITY_SYNC,
+                NetworkExecutor.REQUEST_SEARCH_PLAYLISTS, new Runnable()
         {
+            @Override
             public void run()
             {
                 youtube = new YouTube.Builder(transport, jsonFactory, credential)
@@ -471,7 +478,7 @@ public class YouTubeSearch
                     t.printStackTrace();
                 }
             }
-        }.start();
+        });
 
     }
 
@@ -483,7 +490,8 @@ public class YouTubeSearch
     public void acquirePlaylistVideos(final String playlistId)
     {
         // Define a list to store items in the list of uploaded videos.
-        new Thread(new Runnable()
+        NetworkExecutor.getInstance().execute(NetworkExecutor.PRIORITY_SYNC,
+                NetworkExecutor.REQUEST_SEARCH_PLAYLIST_VIDEOS, new Runnable()
         {
             @Override
             public void run()
@@ -592,6 +600,6 @@ public class YouTubeSearch
 
                 youTubeVideoReceiver.onVideosReceived(playlistItems, null, null);
             }
-        }).start();
+        });
     }
 }
\ No newline at end of file
@@ -33,7 +33,9 @@ import com.teocci.ytinbg.utils.Utils;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 
@@ -258,6 +260,27 @@ public class VideosAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
         notifyDataSetChanged();
     }
 
+    /**
+     * Sets the duration and view count of the listed videos which have the same ID as one of
+     * the given videos, and rebinds only the changed items.
+     */
+    public void updateYouTubeVideoDetails(List<YouTubeVideo> youTubeVideos)
+    {
+        Map<String, YouTubeVideo> details = new HashMap<>();
+        for (YouTubeVideo youTubeVideo : youTubeVideos) {
+            details.put(youTubeVideo.getId(), youTubeVideo);
+        }
+        for (int i = 0; i < videoList.size(); i++) {
+            YouTubeVideo youTubeVideo = videoList.get(i);
+            YouTubeVideo detail = youTubeVideo != null ? details.get(youTubeVideo.getId()) : null;
+            if (detail == null) continue;
+
+            youTubeVideo.setDuration(detail.getDuration());
+            youTubeVideo.setViewCount(detail.getViewCount());
+            notifyItemChanged(i);
+        }
+    }
+
     /**
      * A common adapter reset mechanism. As with VideosAdapter,
      * calling notifyDataSetChanged() will trigger the RecyclerView to update
@@ -3,9 +3,12 @@ package com.teocci.ytinbg.database;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.provider.BaseColumns;
+import android.text.TextUtils;
 import android.util.Log;
 
 import com.teocci.ytinbg.model.YouTubePlaylist;
@@ -13,6 +16,11 @@ import com.teocci.ytinbg.model.YouTubeVideo;
 import com.teocci.ytinbg.utils.LogHelper;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * SQLite database for storing recentlyWatchedVideos and playlist
@@ -22,7 +30,6 @@ public class YouTubeSqlDb
 {
     private static final String TAG = LogHelper.makeLogTag(YouTubeSqlDb.class);
 
-    private static final int DATABASE_VERSION = 1;
     private static final String DATABASE_NAME = "YouTubeDb.db";
 
     public static final String RECENTLY_WATCHED_TABLE_NAME = "recently_watched_videos";
@@ -37,6 +44,7 @@ public class YouTubeSqlDb
     private YouTubeDbHelper dbHelper;
 
     private PlaylistModel playlistModel;
+    private PlaylistItems playlistItems;
     private Videos recentlyWatchedVideos;
     private Videos favoriteVideos;
 
@@ -51,10 +59,16 @@ public class YouTubeSqlDb
 
     public void init(Context context)
     {
-        dbHelper = new YouTubeDbHelper(context);
+        init(context, DATABASE_NAME);
+    }
+
+    void init(Context context, String databaseName)
+    {
+        dbHelper = new YouTubeDbHelper(context, databaseName);
         dbHelper.getWritableDatabase();
 
         playlistModel = new PlaylistModel();
+        playlistItems = new PlaylistItems();
         recentlyWatchedVideos = new Videos(RECENTLY_WATCHED_TABLE_NAME);
         favoriteVideos = new Videos(FAVORITES_TABLE_NAME);
     }
@@ -75,11 +89,102 @@ public class YouTubeSqlDb
         return playlistModel;
     }
 
+    public PlaylistItems playlistItems()
+    {
+        return playlistItems;
+    }
+
+    /**
+     * Binds a value which may be null, SQLiteStatement.bindString() does not take null
+     */
+    private static void bindString(SQLiteStatement statement, int index, String value)
+    {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    /**
+     * One step of the schema, from the version before to its own. A step changes the tables
+     * in place, so the data of the user survives every upgrade.
+     */
+    private abstract static class Migration
+    {
+        private final int version;
+
+        private Migration(int version)
+        {
+            this.version = version;
+        }
+
+        abstract void migrate(SQLiteDatabase db);
+    }
+
+    // Append a step for every new version, never change the ones which were released
+    private static final Migration[] MIGRATIONS = {
+            // Version 2 syncs the playlists incrementally
+            new Migration(2)
+            {
+                @Override
+                void migrate(SQLiteDatabase db)
+                {
+                    db.execSQL(YouTubePlaylistEntry.ADD_COLUMN_ETAG);
+                    db.execSQL(YouTubePlaylistEntry.ADD_COLUMN_POSITION);
+                }
+            },
+            // Version 3 keeps the items of the playlists
+            new Migration(3)
+            {
+                @Override
+                void migrate(SQLiteDatabase db)
+                {
+                    db.execSQL("CREATE TABLE " + YouTubePlaylistItemEntry.TABLE_NAME + "(" +
+                            YouTubePlaylistItemEntry.COLUMN_ENTRY_ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                            YouTubePlaylistItemEntry.COLUMN_PLAYLIST_ID + " TEXT NOT NULL," +
+                            YouTubePlaylistItemEntry.COLUMN_POSITION + " INTEGER NOT NULL," +
+                            YouTubePlaylistItemEntry.COLUMN_VIDEO_ID + " TEXT NOT NULL," +
+                            YouTubePlaylistItemEntry.COLUMN_TITLE + " TEXT," +
+                            YouTubePlaylistItemEntry.COLUMN_DURATION + " TEXT," +
+                            YouTubePlaylistItemEntry.COLUMN_THUMBNAIL_URL + " TEXT);");
+                    db.execSQL("CREATE INDEX " + YouTubePlaylistItemEntry.TABLE_NAME + "_" +
+                            YouTubePlaylistItemEntry.COLUMN_PLAYLIST_ID + " ON " +
+                            YouTubePlaylistItemEntry.TABLE_NAME + "(" +
+                            YouTubePlaylistItemEntry.COLUMN_PLAYLIST_ID + "," +
+                            YouTubePlaylistItemEntry.COLUMN_POSITION + ");");
+                }
+            },
+            // Version 4 allows one item per position of a playlist
+            new Migration(4)
+            {
+                @Override
+                void migrate(SQLiteDatabase db)
+                {
+                    db.execSQL(YouTubePlaylistItemEntry.DELETE_DUPLICATE_POSITIONS);
+                    db.execSQL("DROP INDEX IF EXISTS " + YouTubePlaylistItemEntry.TABLE_NAME + "_" +
+                            YouTubePlaylistItemEntry.COLUMN_PLAYLIST_ID);
+                    db.execSQL(YouTubePlaylistItemEntry.DATABASE_INDEX_CREATE);
+                }
+            },
+            // Version 5 knows which version of a playlist its items were copied at
+            new Migration(5)
+            {
+                @Override
+                void migrate(SQLiteDatabase db)
+                {
+                    db.execSQL(YouTubePlaylistEntry.ADD_COLUMN_ITEMS_ETAG);
+                }
+            }
+    };
+
+    static final int DATABASE_VERSION = MIGRATIONS[MIGRATIONS.length - 1].version;
+
     private final class YouTubeDbHelper extends SQLiteOpenHelper
     {
-        public YouTubeDbHelper(Context context)
+        public YouTubeDbHelper(Context context, String databaseName)
         {
-            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+            super(context, databaseName, null, DATABASE_VERSION);
         }
 
         @Override
@@ -88,21 +193,33 @@ public class YouTubeSqlDb
             db.execSQL(YouTubeVideoEntry.DATABASE_FAVORITES_TABLE_CREATE);
             db.execSQL(YouTubeVideoEntry.DATABASE_RECENTLY_WATCHED_TABLE_CREATE);
             db.execSQL(YouTubePlaylistEntry.DATABASE_TABLE_CREATE);
+            db.execSQL(YouTubePlaylistItemEntry.DATABASE_TABLE_CREATE);
+            db.execSQL(YouTubePlaylistItemEntry.DATABASE_INDEX_CREATE);
         }
 
+        /**
+         * Runs the migrations from the old version on, all in the transaction of the upgrade.
+         * If one fails the database stays at the old version.
+         */
         @Override
         public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion)
         {
-            db.execSQL(YouTubeVideoEntry.DROP_QUERY_RECENTLY_WATCHED);
-            db.execSQL(YouTubeVideoEntry.DROP_QUERY_FAVORITES);
-            db.execSQL(YouTubePlaylistEntry.DROP_QUERY);
-            onCreate(db);
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version > oldVersion && migration.version <= newVersion) {
+                    LogHelper.d(TAG, "Migrating database to version ", migration.version);
+                    migration.migrate(db);
+                }
+            }
         }
 
         @Override
         public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion)
         {
-            onUpgrade(db, oldVersion, newVersion);
+            db.execSQL(YouTubeVideoEntry.DROP_QUERY_RECENTLY_WATCHED);
+            db.execSQL(YouTubeVideoEntry.DROP_QUERY_FAVORITES);
+            db.execSQL(YouTubePlaylistEntry.DROP_QUERY);
+            db.execSQL(YouTubePlaylistItemEntry.DROP_QUERY);
+            onCreate(db);
         }
     }
 
@@ -113,9 +230,25 @@ public class YouTubeSqlDb
     {
         private String tableName;
 
+        // Both statements take the values in the same order, see bindVideo()
+        private final String insertStatement;
+        private final String updateStatement;
+
         private Videos(String tableName)
         {
             this.tableName = tableName;
+            this.insertStatement = "INSERT OR IGNORE INTO " + tableName + "(" +
+                    YouTubeVideoEntry.COLUMN_TITLE + "," +
+                    YouTubeVideoEntry.COLUMN_DURATION + "," +
+                    YouTubeVideoEntry.COLUMN_THUMBNAIL_URL + "," +
+                    YouTubeVideoEntry.COLUMN_VIEWS_NUMBER + "," +
+                    YouTubeVideoEntry.COLUMN_VIDEO_ID + ") VALUES (?,?,?,?,?)";
+            this.updateStatement = "UPDATE " + tableName + " SET " +
+                    YouTubeVideoEntry.COLUMN_TITLE + "=?," +
+                    YouTubeVideoEntry.COLUMN_DURATION + "=?," +
+                    YouTubeVideoEntry.COLUMN_THUMBNAIL_URL + "=?," +
+                    YouTubeVideoEntry.COLUMN_VIEWS_NUMBER + "=?" +
+                    " WHERE " + YouTubeVideoEntry.COLUMN_VIDEO_ID + "=?";
         }
 
         /**
@@ -126,21 +259,82 @@ public class YouTubeSqlDb
          */
         public boolean create(YouTubeVideo video)
         {
-            if (checkIfExists(video.getId())) {
-                return false;
-            }
-            // Gets the data repository in write mode
+            return createAll(Collections.singletonList(video)) > 0;
+        }
+
+        /**
+         * Creates the entries of the videos which are not present yet, in one transaction
+         *
+         * @param videos the videos to create
+         * @return the number of entries created
+         */
+        public int createAll(Collection<YouTubeVideo> videos)
+        {
             SQLiteDatabase db = dbHelper.getWritableDatabase();
+            SQLiteStatement insert = db.compileStatement(insertStatement);
+            int created = 0;
+
+            db.beginTransaction();
+            try {
+                for (YouTubeVideo video : videos) {
+                    bindVideo(insert, video);
+                    // The unique video ID makes the insert of a present video a no-op
+                    if (insert.executeInsert() != -1) {
+                        created++;
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                insert.close();
+            }
+            return created;
+        }
 
-            // Create a new map of values, where column names are the keys
-            ContentValues values = new ContentValues();
-            values.put(YouTubeVideoEntry.COLUMN_VIDEO_ID, video.getId());
-            values.put(YouTubeVideoEntry.COLUMN_TITLE, video.getTitle());
-            values.put(YouTubeVideoEntry.COLUMN_DURATION, video.getDuration());
-            values.put(YouTubeVideoEntry.COLUMN_THUMBNAIL_URL, video.getThumbnailURL());
-            values.put(YouTubeVideoEntry.COLUMN_VIEWS_NUMBER, video.getViewCount());
+        /**
+         * Creates the entries of the new videos and updates the present ones, in one
+         * transaction. Updated entries keep their place in the list.
+         *
+         * @param videos the videos to create or update
+         * @return the number of entries created or updated
+         */
+        public int upsertAll(Collection<YouTubeVideo> videos)
+        {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            SQLiteStatement update = db.compileStatement(updateStatement);
+            SQLiteStatement insert = db.compileStatement(insertStatement);
+            int written = 0;
+
+            db.beginTransaction();
+            try {
+                for (YouTubeVideo video : videos) {
+                    bindVideo(update, video);
+                    if (update.executeUpdateDelete() > 0) {
+                        written++;
+                        continue;
+                    }
+                    bindVideo(insert, video);
+                    if (insert.executeInsert() != -1) {
+                        written++;
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                update.close();
+                insert.close();
+            }
+            return written;
+        }
 
-            return db.insert(tableName, YouTubeVideoEntry.COLUMN_NAME_NULLABLE, values) > 0;
+        private void bindVideo(SQLiteStatement statement, YouTubeVideo video)
+        {
+            statement.clearBindings();
+            bindString(statement, 1, video.getTitle());
+            bindString(statement, 2, video.getDuration());
+            bindString(statement, 3, video.getThumbnailURL());
+            bindString(statement, 4, video.getViewCount());
+            bindString(statement, 5, video.getId());
         }
 
         /**
@@ -151,17 +345,8 @@ public class YouTubeSqlDb
          */
         public boolean checkIfExists(String videoId)
         {
-            SQLiteDatabase db = dbHelper.getReadableDatabase();
-            String Query = "SELECT * FROM " + tableName +
-                    " WHERE " + YouTubeVideoEntry.COLUMN_VIDEO_ID + "='" + videoId + "'";
-            Cursor cursor = db.rawQuery(Query, null);
-            if (cursor.getCount() <= 0) {
-                cursor.close();
-                return false;
-            }
-            cursor.close();
-
-            return true;
+            return DatabaseUtils.queryNumEntries(dbHelper.getReadableDatabase(), tableName,
+                    YouTubeVideoEntry.COLUMN_VIDEO_ID + "=?", new String[]{videoId}) > 0;
         }
 
         /**
@@ -179,22 +364,57 @@ public class YouTubeSqlDb
 
             Cursor c = db.rawQuery(SELECT_QUERY_ORDER_DESC, null);
             while (c.moveToNext()) {
-                String videoId = c.getString(
-                        c.getColumnIndexOrThrow(YouTubeVideoEntry.COLUMN_VIDEO_ID));
-                String title = c.getString(c.getColumnIndexOrThrow(YouTubeVideoEntry.COLUMN_TITLE));
-                String duration = c.getString(
-                        c.getColumnIndexOrThrow(YouTubeVideoEntry.COLUMN_DURATION));
-                String thumbnailUrl = c.getString(
-                        c.getColumnIndexOrThrow(YouTubeVideoEntry.COLUMN_THUMBNAIL_URL));
-                String viewsNumber = c.getString(
-                        c.getColumnIndexOrThrow(YouTubeVideoEntry.COLUMN_VIEWS_NUMBER));
-                list.add(new YouTubeVideo(videoId, title, thumbnailUrl, duration, viewsNumber));
+                list.add(readVideo(c));
             }
             c.close();
 
             return list;
         }
 
+        /**
+         * Reads the entries of the given videos
+         *
+         * @param videoIds the IDs of the videos to look up
+         * @return the stored videos by their ID, videos which are not stored are left out
+         */
+        public Map<String, YouTubeVideo> read(Collection<String> videoIds)
+        {
+            Map<String, YouTubeVideo> videos = new HashMap<>();
+            if (videoIds.isEmpty()) return videos;
+
+            StringBuilder selection = new StringBuilder(YouTubeVideoEntry.COLUMN_VIDEO_ID)
+                    .append(" IN (");
+            for (int i = 0; i < videoIds.size(); i++) {
+                selection.append(i == 0 ? "?" : ",?");
+            }
+            selection.append(')');
+
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            Cursor c = db.query(tableName, null, selection.toString(),
+                    videoIds.toArray(new String[videoIds.size()]), null, null, null);
+            while (c.moveToNext()) {
+                YouTubeVideo video = readVideo(c);
+                videos.put(video.getId(), video);
+            }
+            c.close();
+
+            return videos;
+        }
+
+        private YouTubeVideo readVideo(Cursor c)
+        {
+            String videoId = c.getString(
+                    c.getColumnIndexOrThrow(YouTubeVideoEntry.COLUMN_VIDEO_ID));
+            String title = c.getString(c.getColumnIndexOrThrow(YouTubeVideoEntry.COLUMN_TITLE));
+            String duration = c.getString(
+                    c.getColumnIndexOrThrow(YouTubeVideoEntry.COLUMN_DURATION));
+            String thumbnailUrl = c.getString(
+                    c.getColumnIndexOrThrow(YouTubeVideoEntry.COLUMN_THUMBNAIL_URL));
+            String viewsNumber = c.getString(
+                    c.getColumnIndexOrThrow(YouTubeVideoEntry.COLUMN_VIEWS_NUMBER));
+            return new YouTubeVideo(videoId, title, thumbnailUrl, duration, viewsNumber);
+        }
+
         /**
          * Deletes video entry with provided ID
          *
@@ -204,7 +424,7 @@ public class YouTubeSqlDb
         public boolean delete(String videoId)
         {
             return dbHelper.getWritableDatabase().delete(tableName,
-                    YouTubeVideoEntry.COLUMN_VIDEO_ID + "='" + videoId + "'", null) > 0;
+                    YouTubeVideoEntry.COLUMN_VIDEO_ID + "=?", new String[]{videoId}) > 0;
         }
 
         /**
@@ -245,6 +465,7 @@ public class YouTubeSqlDb
             values.put(YouTubePlaylistEntry.COLUMN_STATUS, youTubePlaylist.getPrivacy());
             values.put(YouTubePlaylistEntry.COLUMN_THUMBNAIL_URL, youTubePlaylist.getThumbnailURL
                     ());
+            values.put(YouTubePlaylistEntry.COLUMN_ETAG, youTubePlaylist.getEtag());
 
             // Insert the new row, returning the primary key value of the new row. If -1,
             // operation has failed
@@ -252,6 +473,130 @@ public class YouTubeSqlDb
                     .COLUMN_NAME_NULLABLE, values) > 0;
         }
 
+        /**
+         * Makes the playlist table equal to the given playlists in one transaction. Only the
+         * playlists which are new, moved or whose ETag changed are written, so syncing an
+         * unchanged list writes nothing.
+         *
+         * @param youTubePlaylists the playlists of the account in their order
+         * @return true if anything was written
+         */
+        public boolean sync(List<YouTubePlaylist> youTubePlaylists)
+        {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            // Compiled once there is something to write
+            SQLiteStatement insert = null;
+            SQLiteStatement update = null;
+            int changes = 0;
+
+            db.beginTransaction();
+            try {
+                // The stored ETag and position of every playlist
+                Map<String, String> storedEtags = new HashMap<>();
+                Map<String, Integer> storedPositions = new HashMap<>();
+                Cursor c = db.query(YouTubePlaylistEntry.TABLE_NAME, new String[]{
+                        YouTubePlaylistEntry.COLUMN_PLAYLIST_ID,
+                        YouTubePlaylistEntry.COLUMN_ETAG,
+                        YouTubePlaylistEntry.COLUMN_POSITION
+                }, null, null, null, null, null);
+                while (c.moveToNext()) {
+                    storedEtags.put(c.getString(0), c.getString(1));
+                    storedPositions.put(c.getString(0), c.isNull(2) ? -1 : c.getInt(2));
+                }
+                c.close();
+
+                int position = 0;
+                for (YouTubePlaylist playlist : youTubePlaylists) {
+                    String playlistId = playlist.getId();
+                    if (!storedEtags.containsKey(playlistId)) {
+                        if (insert == null)
+                            insert = db.compileStatement(YouTubePlaylistEntry.INSERT_STATEMENT);
+                        bindPlaylist(insert, playlist, position);
+                        insert.executeInsert();
+                        changes++;
+                    } else if (playlist.getEtag() == null
+                            || !playlist.getEtag().equals(storedEtags.get(playlistId))
+                            || storedPositions.get(playlistId) != position) {
+                        if (update == null)
+                            update = db.compileStatement(YouTubePlaylistEntry.UPDATE_STATEMENT);
+                        bindPlaylist(update, playlist, position);
+                        update.executeUpdateDelete();
+                        changes++;
+                    }
+                    storedEtags.remove(playlistId);
+                    position++;
+                }
+
+                // The playlists left were deleted on YouTube
+                for (String playlistId : storedEtags.keySet()) {
+                    db.delete(YouTubePlaylistEntry.TABLE_NAME,
+                            YouTubePlaylistEntry.COLUMN_PLAYLIST_ID + "=?",
+                            new String[]{playlistId});
+                    playlistItems.delete(playlistId);
+                    changes++;
+                }
+
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                if (insert != null) insert.close();
+                if (update != null) update.close();
+            }
+
+            LogHelper.d(TAG, "Playlists synced, changed rows: ", changes);
+            return changes > 0;
+        }
+
+        /**
+         * Creates the entries of the new playlists and updates the present ones, in one
+         * transaction. The playlists take the positions of their order.
+         *
+         * @param youTubePlaylists the playlists to create or update
+         * @return the number of entries created or updated
+         */
+        public int upsertAll(List<YouTubePlaylist> youTubePlaylists)
+        {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            SQLiteStatement update = db.compileStatement(YouTubePlaylistEntry.UPDATE_STATEMENT);
+            SQLiteStatement insert = db.compileStatement(YouTubePlaylistEntry.INSERT_STATEMENT);
+            int written = 0;
+
+            db.beginTransaction();
+            try {
+                int position = 0;
+                for (YouTubePlaylist playlist : youTubePlaylists) {
+                    bindPlaylist(update, playlist, position);
+                    if (update.executeUpdateDelete() > 0) {
+                        written++;
+                    } else {
+                        bindPlaylist(insert, playlist, position);
+                        if (insert.executeInsert() != -1)
+                            written++;
+                    }
+                    position++;
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                update.close();
+                insert.close();
+            }
+            return written;
+        }
+
+        private void bindPlaylist(SQLiteStatement statement, YouTubePlaylist playlist,
+                                  int position)
+        {
+            statement.clearBindings();
+            bindString(statement, 1, playlist.getTitle());
+            statement.bindLong(2, playlist.getNumberOfVideos());
+            bindString(statement, 3, playlist.getPrivacy());
+            bindString(statement, 4, playlist.getThumbnailURL());
+            bindString(statement, 5, playlist.getEtag());
+            statement.bindLong(6, position);
+            bindString(statement, 7, playlist.getId());
+        }
+
         /**
          * Reads all playlist from playlist database
          *
@@ -262,7 +607,7 @@ public class YouTubeSqlDb
             ArrayList<YouTubePlaylist> list = new ArrayList<>();
             SQLiteDatabase db = dbHelper.getReadableDatabase();
 
-            Cursor c = db.rawQuery(YouTubePlaylistEntry.SELECT_QUERY_ORDER_DESC, null);
+            Cursor c = db.rawQuery(YouTubePlaylistEntry.SELECT_QUERY_ORDER_POSITION, null);
             while (c.moveToNext()) {
                 String playlistId = c.getString(c.getColumnIndexOrThrow(YouTubePlaylistEntry
                         .COLUMN_PLAYLIST_ID));
@@ -274,12 +619,45 @@ public class YouTubeSqlDb
                         .COLUMN_STATUS));
                 String thumbnailUrl = c.getString(c.getColumnIndexOrThrow(YouTubePlaylistEntry
                         .COLUMN_THUMBNAIL_URL));
-                list.add(new YouTubePlaylist(title, thumbnailUrl, playlistId, number, status));
+                YouTubePlaylist playlist = new YouTubePlaylist(title, thumbnailUrl, playlistId,
+                        number, status);
+                playlist.setEtag(c.getString(c.getColumnIndexOrThrow(YouTubePlaylistEntry
+                        .COLUMN_ETAG)));
+                list.add(playlist);
             }
             c.close();
             return list;
         }
 
+        /**
+         * Checks if any playlist is stored, the tables are empty after they were recreated
+         *
+         * @return boolean
+         */
+        public boolean isEmpty()
+        {
+            return DatabaseUtils.queryNumEntries(dbHelper.getReadableDatabase(),
+                    YouTubePlaylistEntry.TABLE_NAME) == 0;
+        }
+
+        /**
+         * Reads the ETag the playlist had when its items were copied
+         *
+         * @param playlistId playlist ID
+         * @return the ETag or null if the items were not copied yet
+         */
+        public String readItemsEtag(String playlistId)
+        {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            Cursor c = db.query(YouTubePlaylistEntry.TABLE_NAME,
+                    new String[]{YouTubePlaylistEntry.COLUMN_ITEMS_ETAG},
+                    YouTubePlaylistEntry.COLUMN_PLAYLIST_ID + "=?", new String[]{playlistId},
+                    null, null, null);
+            String itemsEtag = c.moveToFirst() ? c.getString(0) : null;
+            c.close();
+            return itemsEtag;
+        }
+
         /**
          * Deletes playlist entry with provided ID
          *
@@ -288,6 +666,7 @@ public class YouTubeSqlDb
          */
         public boolean delete(String playlistId)
         {
+            playlistItems.delete(playlistId);
             return dbHelper.getWritableDatabase().delete(YouTubePlaylistEntry.TABLE_NAME,
                     YouTubePlaylistEntry.COLUMN_PLAYLIST_ID + "='" + playlistId + "'", null) > 0;
         }
@@ -299,11 +678,135 @@ public class YouTubeSqlDb
          */
         public boolean deleteAll()
         {
+            playlistItems.deleteAll();
             return dbHelper.getWritableDatabase().delete(YouTubePlaylistEntry.TABLE_NAME, "1",
                     null) > 0;
         }
     }
 
+    /**
+     * Class that enables basic CRUD operations on the table of the playlist items, a local
+     * copy of every playlist opened so far
+     */
+    public class PlaylistItems
+    {
+        private PlaylistItems() {}
+
+        /**
+         * Reads the items of a playlist in their order
+         *
+         * @param playlistId playlist ID
+         * @return the videos, empty if the playlist has no local copy
+         */
+        public ArrayList<YouTubeVideo> read(String playlistId)
+        {
+            ArrayList<YouTubeVideo> list = new ArrayList<>();
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+            Cursor c = db.query(YouTubePlaylistItemEntry.TABLE_NAME, null,
+                    YouTubePlaylistItemEntry.COLUMN_PLAYLIST_ID + "=?", new String[]{playlistId},
+                    null, null, YouTubePlaylistItemEntry.COLUMN_POSITION);
+            while (c.moveToNext()) {
+                String videoId = c.getString(c.getColumnIndexOrThrow(YouTubePlaylistItemEntry
+                        .COLUMN_VIDEO_ID));
+                String title = c.getString(c.getColumnIndexOrThrow(YouTubePlaylistItemEntry
+                        .COLUMN_TITLE));
+                String duration = c.getString(c.getColumnIndexOrThrow(YouTubePlaylistItemEntry
+                        .COLUMN_DURATION));
+                String thumbnailUrl = c.getString(c.getColumnIndexOrThrow(YouTubePlaylistItemEntry
+                        .COLUMN_THUMBNAIL_URL));
+                list.add(new YouTubeVideo(videoId, title, thumbnailUrl, duration, null));
+            }
+            c.close();
+            return list;
+        }
+
+        /**
+         * Replaces the items of a playlist in one transaction, unless they are the same
+         * already, and records the ETag of the playlist they were copied at
+         *
+         * @param playlistId    playlist ID
+         * @param youTubeVideos the videos of the playlist in their order
+         * @param playlistEtag  the ETag of the playlist when the videos were acquired
+         * @return true if the items were written
+         */
+        public boolean replace(String playlistId, List<YouTubeVideo> youTubeVideos,
+                               String playlistEtag)
+        {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            ContentValues values = new ContentValues();
+            values.put(YouTubePlaylistEntry.COLUMN_ITEMS_ETAG, playlistEtag);
+            if (isSame(read(playlistId), youTubeVideos)) {
+                db.update(YouTubePlaylistEntry.TABLE_NAME, values,
+                        YouTubePlaylistEntry.COLUMN_PLAYLIST_ID + "=?", new String[]{playlistId});
+                return false;
+            }
+
+            SQLiteStatement insert = db.compileStatement(YouTubePlaylistItemEntry.INSERT_STATEMENT);
+            db.beginTransaction();
+            try {
+                db.update(YouTubePlaylistEntry.TABLE_NAME, values,
+                        YouTubePlaylistEntry.COLUMN_PLAYLIST_ID + "=?", new String[]{playlistId});
+                delete(playlistId);
+                int position = 0;
+                for (YouTubeVideo video : youTubeVideos) {
+                    insert.clearBindings();
+                    bindString(insert, 1, playlistId);
+                    insert.bindLong(2, position++);
+                    bindString(insert, 3, video.getId());
+                    bindString(insert, 4, video.getTitle());
+                    bindString(insert, 5, video.getDuration());
+                    bindString(insert, 6, video.getThumbnailURL());
+                    insert.executeInsert();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                insert.close();
+            }
+            return true;
+        }
+
+        /**
+         * Deletes the items of a playlist
+         *
+         * @param playlistId playlist ID
+         * @return boolean
+         */
+        public boolean delete(String playlistId)
+        {
+            return dbHelper.getWritableDatabase().delete(YouTubePlaylistItemEntry.TABLE_NAME,
+                    YouTubePlaylistItemEntry.COLUMN_PLAYLIST_ID + "=?", new String[]{playlistId}) > 0;
+        }
+
+        /**
+         * Deletes all entries from database
+         *
+         * @return boolean
+         */
+        public boolean deleteAll()
+        {
+            return dbHelper.getWritableDatabase().delete(YouTubePlaylistItemEntry.TABLE_NAME, "1",
+                    null) > 0;
+        }
+
+        private boolean isSame(List<YouTubeVideo> stored, List<YouTubeVideo> youTubeVideos)
+        {
+            if (stored.size() != youTubeVideos.size()) return false;
+            for (int i = 0; i < stored.size(); i++) {
+                YouTubeVideo lhs = stored.get(i);
+                YouTubeVideo rhs = youTubeVideos.get(i);
+                if (!TextUtils.equals(lhs.getId(), rhs.getId())
+                        || !TextUtils.equals(lhs.getTitle(), rhs.getTitle())
+                        || !TextUtils.equals(lhs.getDuration(), rhs.getDuration())
+                        || !TextUtils.equals(lhs.getThumbnailURL(), rhs.getThumbnailURL())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     /**
      * Inner class that defines Videos table entry
      */
@@ -353,6 +856,10 @@ public class YouTubeSqlDb
         public static final String COLUMN_VIDEOS_NUMBER = "videos_number";
         public static final String COLUMN_STATUS = "status";
         public static final String COLUMN_THUMBNAIL_URL = "thumbnail_url";
+        public static final String COLUMN_ETAG = "etag";
+        public static final String COLUMN_POSITION = "position";
+        // The ETag of the playlist when its items were copied
+        public static final String COLUMN_ITEMS_ETAG = "items_etag";
 
         public static final String COLUMN_NAME_NULLABLE = "null";
 
@@ -363,10 +870,77 @@ public class YouTubeSqlDb
                         COLUMN_TITLE + " TEXT NOT NULL," +
                         COLUMN_VIDEOS_NUMBER + " INTEGER," +
                         COLUMN_THUMBNAIL_URL + " TEXT," +
-                        COLUMN_STATUS + " TEXT);";
+                        COLUMN_STATUS + " TEXT," +
+                        COLUMN_ETAG + " TEXT," +
+                        COLUMN_POSITION + " INTEGER," +
+                        COLUMN_ITEMS_ETAG + " TEXT);";
+
+        private static final String ADD_COLUMN_ETAG = "ALTER TABLE " + TABLE_NAME +
+                " ADD COLUMN " + COLUMN_ETAG + " TEXT";
+        private static final String ADD_COLUMN_POSITION = "ALTER TABLE " + TABLE_NAME +
+                " ADD COLUMN " + COLUMN_POSITION + " INTEGER";
+        private static final String ADD_COLUMN_ITEMS_ETAG = "ALTER TABLE " + TABLE_NAME +
+                " ADD COLUMN " + COLUMN_ITEMS_ETAG + " TEXT";
 
         public static final String DROP_QUERY = "DROP TABLE " + TABLE_NAME;
         public static final String SELECT_QUERY_ORDER_DESC = "SELECT * FROM " + TABLE_NAME + " " +
                 "ORDER BY " + COLUMN_ENTRY_ID + " DESC";
+        public static final String SELECT_QUERY_ORDER_POSITION = "SELECT * FROM " + TABLE_NAME +
+                " ORDER BY " + COLUMN_POSITION + ", " + COLUMN_ENTRY_ID + " DESC";
+
+        // Both statements take the values in the same order, see PlaylistModel.bindPlaylist()
+        private static final String INSERT_STATEMENT = "INSERT OR IGNORE INTO " + TABLE_NAME + "(" +
+                COLUMN_TITLE + "," + COLUMN_VIDEOS_NUMBER + "," + COLUMN_STATUS + "," +
+                COLUMN_THUMBNAIL_URL + "," + COLUMN_ETAG + "," + COLUMN_POSITION + "," +
+                COLUMN_PLAYLIST_ID + ") VALUES (?,?,?,?,?,?,?)";
+        private static final String UPDATE_STATEMENT = "UPDATE " + TABLE_NAME + " SET " +
+                COLUMN_TITLE + "=?," + COLUMN_VIDEOS_NUMBER + "=?," + COLUMN_STATUS + "=?," +
+                COLUMN_THUMBNAIL_URL + "=?," + COLUMN_ETAG + "=?," + COLUMN_POSITION + "=?" +
+                " WHERE " + COLUMN_PLAYLIST_ID + "=?";
+    }
+
+    /**
+     * Inner class that defines Playlist item table entry
+     */
+    public static abstract class YouTubePlaylistItemEntry implements BaseColumns
+    {
+        public static final String TABLE_NAME = "playlist_items";
+        public static final String COLUMN_ENTRY_ID = "_id";
+        public static final String COLUMN_PLAYLIST_ID = "playlist_id";
+        public static final String COLUMN_POSITION = "position";
+        public static final String COLUMN_VIDEO_ID = "video_id";
+        public static final String COLUMN_TITLE = "title";
+        public static final String COLUMN_DURATION = "duration";
+        public static final String COLUMN_THUMBNAIL_URL = "thumbnail_url";
+
+        public static final String COLUMN_NAME_NULLABLE = "null";
+
+        private static final String DATABASE_TABLE_CREATE =
+                "CREATE TABLE " + TABLE_NAME + "(" +
+                        COLUMN_ENTRY_ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        COLUMN_PLAYLIST_ID + " TEXT NOT NULL," +
+                        COLUMN_POSITION + " INTEGER NOT NULL," +
+                        COLUMN_VIDEO_ID + " TEXT NOT NULL," +
+                        COLUMN_TITLE + " TEXT," +
+                        COLUMN_DURATION + " TEXT," +
+                        COLUMN_THUMBNAIL_URL + " TEXT);";
+
+        // Opening a playlist reads its items in order straight from this index
+        private static final String DATABASE_INDEX_CREATE =
+                "CREATE UNIQUE INDEX " + TABLE_NAME + "_" + COLUMN_PLAYLIST_ID + "_" +
+                        COLUMN_POSITION + " ON " + TABLE_NAME +
+                        "(" + COLUMN_PLAYLIST_ID + "," + COLUMN_POSITION + ");";
+
+        // Keeps the first item of every position, the unique index needs that
+        private static final String DELETE_DUPLICATE_POSITIONS = "DELETE FROM " + TABLE_NAME +
+                " WHERE " + COLUMN_ENTRY_ID + " NOT IN (SELECT MIN(" + COLUMN_ENTRY_ID + ") FROM " +
+                TABLE_NAME + " GROUP BY " + COLUMN_PLAYLIST_ID + "," + COLUMN_POSITION + ")";
+
+        public static final String DROP_QUERY = "DROP TABLE IF EXISTS " + TABLE_NAME;
+
+        private static final String INSERT_STATEMENT = "INSERT INTO " + TABLE_NAME + "(" +
+                COLUMN_PLAYLIST_ID + "," + COLUMN_POSITION + "," + COLUMN_VIDEO_ID + "," +
+                COLUMN_TITLE + "," + COLUMN_DURATION + "," + COLUMN_THUMBNAIL_URL +
+                ") VALUES (?,?,?,?,?,?)";
     }
 }
@@ -3,6 +3,8 @@ package com.teocci.ytinbg.interfaces;
 import com.teocci.ytinbg.BackgroundExoAudioService;
 import com.teocci.ytinbg.model.YouTubeVideo;
 
+import java.util.List;
+
 /**
  * Created by teocci.
  * <p>
@@ -64,6 +66,14 @@ public interface Playback
 
     void play(YouTubeVideo item);
 
+    /**
+     * Tell the playback which videos follow the one that is playing. Implementations that
+     * support gapless playback prepare them ahead of time, others may ignore this.
+     *
+     * @param nextVideos the upcoming videos in play order
+     */
+    void setNextVideos(List<YouTubeVideo> nextVideos);
+
     void pause();
 
     void seekTo(long position);
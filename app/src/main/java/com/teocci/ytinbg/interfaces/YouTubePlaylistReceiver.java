@@ -16,4 +16,7 @@ public interface YouTubePlaylistReceiver
     void onPlaylistNotFound(String playlistId, int errorCode);
 
     void onPlaylistVideoReceived(List<YouTubeVideo> youTubeVideos);
+
+    // The pages after the first one, while the playback of the first one goes on
+    void onPlaylistVideoPageReceived(List<YouTubeVideo> youTubeVideos);
 }
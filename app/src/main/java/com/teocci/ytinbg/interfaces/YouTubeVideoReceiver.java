@@ -11,4 +11,12 @@ import java.util.List;
 public interface YouTubeVideoReceiver
 {
     void onVideosReceived(List<YouTubeVideo> youTubeVideos, String currentPageToken, String nextPageToken);
+
+    /**
+     * Called after {@link #onVideosReceived} when the durations and view counts of the
+     * videos it delivered without them are known.
+     *
+     * @param youTubeVideos the videos with their details, matched by their ID
+     */
+    void onVideoDetailsReceived(List<YouTubeVideo> youTubeVideos);
 }
\ No newline at end of file
@@ -18,7 +18,8 @@ public class YouTubePlaylist implements Serializable
     private String id;
     private long numberOfVideos;
     private String privacy;
-
+    // Changes whenever the playlist changes on YouTube
+    private String etag;
 
     public YouTubePlaylist()
     {
@@ -89,6 +90,16 @@ public class YouTubePlaylist implements Serializable
         this.privacy = status;
     }
 
+    public String getEtag()
+    {
+        return etag;
+    }
+
+    public void setEtag(String etag)
+    {
+        this.etag = etag;
+    }
+
     @Override
     public String toString()
     {
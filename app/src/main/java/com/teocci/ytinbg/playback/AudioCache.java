@@ -0,0 +1,60 @@
+package com.teocci.ytinbg.playback;
+
+import android.content.Context;
+
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSourceFactory;
+import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import com.google.android.exoplayer2.util.Util;
+import com.teocci.ytinbg.utils.Config;
+
+import java.io.File;
+
+/**
+ * Created by teocci.
+ * Disk cache shared by the player and the {@link QueuePrefetcher}, so the audio buffered ahead
+ * of time is read back from disk when the track starts. Network reads are measured by the
+ * bandwidth meter of the {@link StreamSelector}.
+ *
+ * @author teocci@yandex.com on 2017-Jun-08
+ */
+
+public class AudioCache
+{
+    private static final String CACHE_DIR_NAME = "audio";
+
+    // A cache directory may only be used by one SimpleCache instance at a time.
+    private static Cache cache;
+
+    public static synchronized Cache getInstance(Context context)
+    {
+        if (cache == null) {
+            cache = new SimpleCache(
+                    new File(context.getApplicationContext().getCacheDir(), CACHE_DIR_NAME),
+                    new LeastRecentlyUsedCacheEvictor(Config.AUDIO_CACHE_SIZE)
+            );
+        }
+        return cache;
+    }
+
+    /**
+     * Produces DataSource instances that read through the audio cache.
+     */
+    public static DataSource.Factory buildDataSourceFactory(Context context)
+    {
+        DataSource.Factory upstreamFactory = new DefaultDataSourceFactory(
+                context,
+                Util.getUserAgent(context, "yib"),
+                StreamSelector.getBandwidthMeter()
+        );
+        return new CacheDataSourceFactory(
+                getInstance(context),
+                upstreamFactory,
+                CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR
+        );
+    }
+}
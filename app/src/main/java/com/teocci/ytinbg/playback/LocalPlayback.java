@@ -21,14 +21,13 @@ import com.google.android.exoplayer2.SimpleExoPlayer;
 import com.google.android.exoplayer2.Timeline;
 import com.google.android.exoplayer2.extractor.DefaultExtractorsFactory;
 import com.google.android.exoplayer2.extractor.ExtractorsFactory;
+import com.google.android.exoplayer2.source.DynamicConcatenatingMediaSource;
 import com.google.android.exoplayer2.source.ExtractorMediaSource;
 import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.TrackGroupArray;
 import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
 import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
 import com.google.android.exoplayer2.upstream.DataSource;
-import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
-import com.google.android.exoplayer2.util.Util;
 import com.teocci.ytinbg.BackgroundExoAudioService;
 import com.teocci.ytinbg.R;
 import com.teocci.ytinbg.interfaces.Playback;
@@ -36,22 +35,14 @@ import com.teocci.ytinbg.model.YouTubeVideo;
 import com.teocci.ytinbg.utils.Config;
 import com.teocci.ytinbg.utils.LogHelper;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import at.huber.youtubeExtractor.CancellableExtractor;
+import at.huber.youtubeExtractor.ExtractionFuture;
 import at.huber.youtubeExtractor.VideoMeta;
-import at.huber.youtubeExtractor.YouTubeExtractor;
 import at.huber.youtubeExtractor.YtFile;
 
-import static com.teocci.ytinbg.utils.Config.YOUTUBE_ITAG_140;
-import static com.teocci.ytinbg.utils.Config.YOUTUBE_ITAG_141;
-import static com.teocci.ytinbg.utils.Config.YOUTUBE_ITAG_17;
-import static com.teocci.ytinbg.utils.Config.YOUTUBE_ITAG_171;
-import static com.teocci.ytinbg.utils.Config.YOUTUBE_ITAG_18;
-import static com.teocci.ytinbg.utils.Config.YOUTUBE_ITAG_22;
-import static com.teocci.ytinbg.utils.Config.YOUTUBE_ITAG_249;
-import static com.teocci.ytinbg.utils.Config.YOUTUBE_ITAG_250;
-import static com.teocci.ytinbg.utils.Config.YOUTUBE_ITAG_251;
-import static com.teocci.ytinbg.utils.Config.YOUTUBE_ITAG_36;
-import static com.teocci.ytinbg.utils.Config.YOUTUBE_ITAG_43;
-
 /**
  * Created by teocci.
  *
@@ -90,9 +81,25 @@ public class LocalPlayback implements Playback
     // Whether to return STATE_NONE or STATE_STOPPED when exoPlayer is null;
     private boolean exoPlayerNullIsStopped = false;
 
-    private boolean isExtractingYTURL = false;
+    private final CancellableExtractor extractor;
+    // The extraction of currentYouTubeVideoId, null if none is running
+    private ExtractionFuture currentExtraction;
+    // The extraction of pendingNextVideoId, null if none is running
+    private ExtractionFuture nextExtraction;
     private boolean hasBeenExtracted = false;
 
+    // Gapless mode: the upcoming video is appended to the prepared source as soon as its url is
+    // resolved, so ExoPlayer moves on without being prepared again.
+    private boolean gaplessEnabled = true;
+    private DynamicConcatenatingMediaSource concatenatingSource;
+    // Video ids of the windows of concatenatingSource
+    private final List<String> sourceVideoIds = new ArrayList<>();
+    private int currentWindowIndex;
+    private List<YouTubeVideo> nextVideos = new ArrayList<>();
+    private String pendingNextVideoId;
+    // Set when ExoPlayer moved on to the next window by itself
+    private String gaplessVideoId;
+
     private final IntentFilter audioNoisyIntentFilter = new IntentFilter(
             AudioManager.ACTION_AUDIO_BECOMING_NOISY
     );
@@ -144,6 +151,10 @@ public class LocalPlayback implements Playback
         this.wifiLock = ((WifiManager) applicationContext
                 .getSystemService(Context.WIFI_SERVICE))
                 .createWifiLock(WifiManager.WIFI_MODE_FULL, Config.KEY_LOCK);
+
+        this.extractor = new CancellableExtractor(applicationContext);
+        this.extractor.setParseDashManifest(true);
+        this.extractor.setDeadline(Config.EXTRACTION_DEADLINE_MS);
     }
 
     @Override
@@ -155,6 +166,7 @@ public class LocalPlayback implements Playback
     @Override
     public void stop(boolean notifyListeners)
     {
+        cancelExtractions();
         giveUpAudioFocus();
         unregisterAudioNoisyReceiver();
         releaseResources(true);
@@ -228,6 +240,12 @@ public class LocalPlayback implements Playback
     public void play(YouTubeVideo youTubeVideo)
     {
         LogHelper.e(TAG, "play");
+        if (exoPlayer != null && TextUtils.equals(youTubeVideo.getId(), gaplessVideoId)) {
+            // ExoPlayer is already playing this one, we keep the audio focus and the wifi lock.
+            gaplessVideoId = null;
+            return;
+        }
+        gaplessVideoId = null;
         playOnFocusGain = true;
         tryToGetAudioFocus();
         registerAudioNoisyReceiver();
@@ -239,15 +257,30 @@ public class LocalPlayback implements Playback
             currentYouTubeVideoId = youTubeVideoId;
         }
         if (videoHasChanged || exoPlayer == null || !hasBeenExtracted) {
-//            LogHelper.e(TAG, "play | calling: extractUrlAndPlay " + (!isExtractingYTURL ? "true" : "false"));
-            if (!isExtractingYTURL) extractUrlAndPlay();
-        } else if (!isExtractingYTURL) {
+            // A running extraction of another video is superseded by this one
+            if (videoHasChanged || currentExtraction == null) extractUrlAndPlay();
+        } else if (currentExtraction == null) {
 //            LogHelper.e(TAG, "play | calling: seekTo and configurePlayerState");
             seekTo(0);
             configurePlayerState();
         }
     }
 
+    @Override
+    public void setNextVideos(List<YouTubeVideo> nextVideos)
+    {
+        this.nextVideos = nextVideos != null ? nextVideos : new ArrayList<YouTubeVideo>();
+        appendNextVideo();
+    }
+
+    /**
+     * Enables or disables the gapless transition to the next video. Default: true
+     */
+    public void setGaplessEnabled(boolean gaplessEnabled)
+    {
+        this.gaplessEnabled = gaplessEnabled;
+    }
+
     @Override
     public void pause()
     {
@@ -307,31 +340,34 @@ public class LocalPlayback implements Playback
     private void extractUrlAndPlay()
     {
         final String youtubeLink = "https://youtube.com/watch?v=" + currentYouTubeVideoId;
-        isExtractingYTURL = true;
+        if (currentExtraction != null) {
+            LogHelper.d(TAG, "extractUrlAndPlay | cancel ", currentExtraction.getVideoId());
+            currentExtraction.cancel(true);
+        }
 
         LogHelper.e(TAG, "extractUrlAndPlay | called");
-        new YouTubeExtractor(context)
+        currentExtraction = extractor.extract(youtubeLink, new CancellableExtractor.Callback()
         {
             @Override
-            public void onExtractionComplete(SparseArray<YtFile> ytFiles, VideoMeta videoMeta)
+            public void onExtractionComplete(String videoId, SparseArray<YtFile> ytFiles,
+                                             VideoMeta videoMeta)
             {
+                currentExtraction = null;
 //                LogHelper.e(TAG, "extractUrlAndPlay | started");
                 if (ytFiles == null) {
                     Toast.makeText(
                             context,
                             context.getResources().getString(
                                     R.string.toast_message_error_extracting,
-                                    videoMeta.getTitle()
+                                    getTitle(videoMeta)
                             ),
                             Toast.LENGTH_SHORT
                     ).show();
 //                    LogHelper.e(TAG, "extractUrlAndPlay | ended-error");
-                    isExtractingYTURL = false;
                     return;
                 }
-                YtFile ytFile = getBestStream(ytFiles);
-                LogHelper.e(TAG, ytFile.getUrl());
-                if (validateUrl(ytFile.getUrl())) {
+                YtFile ytFile = StreamSelector.selectStream(context, ytFiles);
+                if (ytFile != null && validateUrl(ytFile.getUrl())) {
 //                    LogHelper.e(TAG, "extractUrlAndPlay | validateUrl extracted");
 
                     releaseResources(false); // Release everything except the player
@@ -343,22 +379,18 @@ public class LocalPlayback implements Playback
 
                     exoPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
 
-                    // Produces DataSource instances through which media data is loaded.
-                    DataSource.Factory dataSourceFactory = new DefaultDataSourceFactory(
-                            context,
-                            Util.getUserAgent(context, "yib"),
-                            null
-                    );
-                    // Produces Extractor instances for parsing the media data.
-                    ExtractorsFactory extractorsFactory = new DefaultExtractorsFactory();
-                    // The MediaSource represents the media to be played.
-                    MediaSource mediaSource = new ExtractorMediaSource(
-                            Uri.parse(ytFile.getUrl()),
-                            dataSourceFactory,
-                            extractorsFactory,
-                            null,
-                            null
-                    );
+                    MediaSource mediaSource = buildMediaSource(ytFile.getUrl());
+                    if (gaplessEnabled) {
+                        concatenatingSource = new DynamicConcatenatingMediaSource();
+                        concatenatingSource.addMediaSource(mediaSource);
+                        sourceVideoIds.clear();
+                        sourceVideoIds.add(currentYouTubeVideoId);
+                        currentWindowIndex = 0;
+                        pendingNextVideoId = null;
+                        mediaSource = concatenatingSource;
+                    } else {
+                        concatenatingSource = null;
+                    }
 
                     // Prepares media to play (happens on background thread) and triggers
                     // {@code onPlayerStateChanged} callback when the stream is ready to play.
@@ -369,6 +401,7 @@ public class LocalPlayback implements Playback
                     // sleep while the song is playing.
                     wifiLock.acquire();
                     hasBeenExtracted = true;
+                    appendNextVideo();
 
 //                    LogHelper.e(TAG, "extractUrlAndPlay calls: configurePlayerState");
                     configurePlayerState();
@@ -378,68 +411,103 @@ public class LocalPlayback implements Playback
                             context,
                             context.getResources().getString(
                                     R.string.toast_message_error_playing_url,
-                                    videoMeta.getTitle()
+                                    getTitle(videoMeta)
                             ),
                             Toast.LENGTH_SHORT
                     ).show();
 //                    LogHelper.e(TAG, "extractUrlAndPlay | ended-error: No Link found");
                 }
-
-                isExtractingYTURL = false;
             }
-        }.extract(youtubeLink, true, true);
+        });
     }
 
+    private static String getTitle(VideoMeta videoMeta)
+    {
+        return videoMeta != null ? videoMeta.getTitle() : "";
+    }
 
-    private boolean validateUrl(String url)
+    private void cancelExtractions()
     {
-        // https://r8---sn-3u-bh2ee.googlevideo.com/videoplayback
-        return url.contains(".googlevideo.com/videoplayback");
+        if (currentExtraction != null) {
+            currentExtraction.cancel(true);
+            currentExtraction = null;
+        }
+        if (nextExtraction != null) {
+            nextExtraction.cancel(true);
+            nextExtraction = null;
+        }
     }
 
+
     /**
-     * Get the best available audio stream
-     *
-     * @param ytFiles Array of available streams
-     * @return Audio stream with highest bitrate
+     * Resolves the first of {@link #nextVideos} and appends it to the prepared source, unless it
+     * is already there. Whatever was appended for an older queue is removed.
      */
-    private YtFile getBestStream(SparseArray<YtFile> ytFiles)
-    {
-//        Log.e(TAG, "ytFiles: " + ytFiles);
-        if (ytFiles.get(YOUTUBE_ITAG_141) != null) {
-            LogHelper.e(TAG, " gets YOUTUBE_ITAG_141");
-            return ytFiles.get(YOUTUBE_ITAG_141);
-        } else if (ytFiles.get(YOUTUBE_ITAG_140) != null) {
-            LogHelper.e(TAG, " gets YOUTUBE_ITAG_140");
-            return ytFiles.get(YOUTUBE_ITAG_140);
-        } else if (ytFiles.get(YOUTUBE_ITAG_251) != null) {
-            LogHelper.e(TAG, " gets YOUTUBE_ITAG_251");
-            return ytFiles.get(YOUTUBE_ITAG_251);
-        } else if (ytFiles.get(YOUTUBE_ITAG_250) != null) {
-            LogHelper.e(TAG, " gets YOUTUBE_ITAG_250");
-            return ytFiles.get(YOUTUBE_ITAG_250);
-        } else if (ytFiles.get(YOUTUBE_ITAG_249) != null) {
-            LogHelper.e(TAG, " gets YOUTUBE_ITAG_249");
-            return ytFiles.get(YOUTUBE_ITAG_249);
-        } else if (ytFiles.get(YOUTUBE_ITAG_171) != null) {
-            LogHelper.e(TAG, " gets YOUTUBE_ITAG_171");
-            return ytFiles.get(YOUTUBE_ITAG_171);
-        } else if (ytFiles.get(YOUTUBE_ITAG_18) != null) {
-            LogHelper.e(TAG, " gets YOUTUBE_ITAG_18");
-            return ytFiles.get(YOUTUBE_ITAG_18);
-        } else if (ytFiles.get(YOUTUBE_ITAG_22) != null) {
-            LogHelper.e(TAG, " gets YOUTUBE_ITAG_22");
-            return ytFiles.get(YOUTUBE_ITAG_22);
-        } else if (ytFiles.get(YOUTUBE_ITAG_43) != null) {
-            LogHelper.e(TAG, " gets YOUTUBE_ITAG_43");
-            return ytFiles.get(YOUTUBE_ITAG_43);
-        } else if (ytFiles.get(YOUTUBE_ITAG_36) != null) {
-            LogHelper.e(TAG, " gets YOUTUBE_ITAG_36");
-            return ytFiles.get(YOUTUBE_ITAG_36);
+    private void appendNextVideo()
+    {
+        if (!gaplessEnabled || concatenatingSource == null || nextVideos.isEmpty()) return;
+
+        final String nextVideoId = nextVideos.get(0).getId();
+        int nextIndex = currentWindowIndex + 1;
+        if (nextIndex < sourceVideoIds.size()) {
+            if (TextUtils.equals(sourceVideoIds.get(nextIndex), nextVideoId)) return;
+            while (sourceVideoIds.size() > nextIndex) {
+                int lastIndex = sourceVideoIds.size() - 1;
+                concatenatingSource.removeMediaSource(lastIndex);
+                sourceVideoIds.remove(lastIndex);
+            }
         }
+        if (TextUtils.equals(nextVideoId, pendingNextVideoId)) return;
+
+        // The queue changed, the former next video won't be needed
+        if (nextExtraction != null) nextExtraction.cancel(true);
+        pendingNextVideoId = nextVideoId;
+        final DynamicConcatenatingMediaSource targetSource = concatenatingSource;
+        String nextLink = "https://youtube.com/watch?v=" + nextVideoId;
+        nextExtraction = extractor.extract(nextLink, new CancellableExtractor.Callback()
+        {
+            @Override
+            public void onExtractionComplete(String videoId, SparseArray<YtFile> ytFiles,
+                                             VideoMeta videoMeta)
+            {
+                nextExtraction = null;
+                // The player was prepared again or the queue changed in the meantime
+                if (targetSource != concatenatingSource
+                        || !TextUtils.equals(nextVideoId, pendingNextVideoId)) return;
+                pendingNextVideoId = null;
+                // The played windows may have been dropped since, so the index is not captured
+                if (ytFiles == null || sourceVideoIds.size() != currentWindowIndex + 1) return;
+
+                YtFile ytFile = StreamSelector.selectStream(context, ytFiles);
+                if (ytFile == null || !validateUrl(ytFile.getUrl())) return;
+                LogHelper.d(TAG, "appendNextVideo | ", nextVideoId);
+                concatenatingSource.addMediaSource(buildMediaSource(ytFile.getUrl()));
+                sourceVideoIds.add(nextVideoId);
+            }
+        });
+    }
+
+    private MediaSource buildMediaSource(String url)
+    {
+        // Produces DataSource instances through which media data is loaded.
+        // Reads through the audio cache which may hold data prefetched for this video.
+        DataSource.Factory dataSourceFactory = AudioCache.buildDataSourceFactory(context);
+        // Produces Extractor instances for parsing the media data.
+        ExtractorsFactory extractorsFactory = new DefaultExtractorsFactory();
+        // The MediaSource represents the media to be played.
+        return new ExtractorMediaSource(
+                Uri.parse(url),
+                dataSourceFactory,
+                extractorsFactory,
+                null,
+                null
+        );
+    }
 
-        LogHelper.e(TAG, " gets YOUTUBE_ITAG_17");
-        return ytFiles.get(YOUTUBE_ITAG_17);
+    private boolean validateUrl(String url)
+    {
+        // https://r8---sn-3u-bh2ee.googlevideo.com/videoplayback
+        return url.contains(".googlevideo.com/videoplayback");
     }
 
     private void giveUpAudioFocus()
@@ -531,6 +599,10 @@ public class LocalPlayback implements Playback
             exoPlayer.release();
             exoPlayer.removeListener(eventListener);
             exoPlayer = null;
+            concatenatingSource = null;
+            sourceVideoIds.clear();
+            pendingNextVideoId = null;
+            gaplessVideoId = null;
             exoPlayerNullIsStopped = true;
             playOnFocusGain = false;
         }
@@ -622,6 +694,30 @@ public class LocalPlayback implements Playback
 
         @Override
         public void onPositionDiscontinuity()
+        {
+            if (concatenatingSource == null || exoPlayer == null) return;
+            // The window indexes of the player are stale until the played windows are removed
+            if (exoPlayer.getCurrentTimeline().getWindowCount() > sourceVideoIds.size()) return;
+            int windowIndex = exoPlayer.getCurrentWindowIndex();
+            if (windowIndex == currentWindowIndex || windowIndex >= sourceVideoIds.size()) return;
+
+            // ExoPlayer moved on to the appended video, let the queue follow.
+            currentYouTubeVideoId = sourceVideoIds.get(windowIndex);
+            // The windows played before are not needed anymore, so the source doesn't keep
+            // growing with every video. The last one is removed first to keep the indexes valid.
+            for (int i = windowIndex - 1; i >= 0; i--) {
+                concatenatingSource.removeMediaSource(i);
+                sourceVideoIds.remove(i);
+            }
+            currentWindowIndex = 0;
+            gaplessVideoId = currentYouTubeVideoId;
+            if (callback != null) {
+                callback.onCompletion();
+            }
+        }
+
+        @Override
+        public void onRepeatModeChanged(int repeatMode)
         {
             // Nothing to do.
         }
@@ -11,6 +11,7 @@ import android.support.v4.media.session.PlaybackStateCompat;
 
 import com.teocci.ytinbg.interfaces.Playback;
 import com.teocci.ytinbg.model.YouTubeVideo;
+import com.teocci.ytinbg.utils.Config;
 import com.teocci.ytinbg.utils.LogHelper;
 
 import java.util.List;
@@ -33,6 +34,7 @@ public class PlaybackManager implements Playback.Callback
     private Playback playback;
     private PlaybackServiceCallback serviceCallback;
     private MediaSessionCallback mediaSessionCallback;
+    private QueuePrefetcher queuePrefetcher;
 
     public PlaybackManager(PlaybackServiceCallback serviceCallback, Resources resources,
                            QueueManager queueManager,
@@ -56,6 +58,15 @@ public class PlaybackManager implements Playback.Callback
         return mediaSessionCallback;
     }
 
+    /**
+     * @param queuePrefetcher resolves the upcoming queue items whenever a video starts playing,
+     *                        may be null to disable the look-ahead.
+     */
+    public void setQueuePrefetcher(QueuePrefetcher queuePrefetcher)
+    {
+        this.queuePrefetcher = queuePrefetcher;
+    }
+
     /**
      * Handle a request to play music
      */
@@ -66,6 +77,10 @@ public class PlaybackManager implements Playback.Callback
         if (currentYouTubeVideo != null) {
             serviceCallback.onPlaybackStart();
             playback.play(currentYouTubeVideo);
+            playback.setNextVideos(queueManager.getUpcomingVideos(1));
+            if (queuePrefetcher != null) {
+                queuePrefetcher.prefetch(queueManager.getUpcomingVideos(Config.PREFETCH_QUEUE_ITEMS));
+            }
         }
     }
 
@@ -92,6 +107,9 @@ public class PlaybackManager implements Playback.Callback
     {
         LogHelper.d(TAG, "handleStopRequest: mState=" + playback.getState() + " error=", withError);
         playback.stop(true);
+        if (queuePrefetcher != null) {
+            queuePrefetcher.cancel();
+        }
         serviceCallback.onPlaybackStop();
         updatePlaybackState(withError);
     }
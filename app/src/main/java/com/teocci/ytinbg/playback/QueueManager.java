@@ -83,6 +83,22 @@ public class QueueManager
         return playingQueue.get(currentIndex);
     }
 
+    /**
+     * Returns the videos that follow the current one, in the order {@link #skipQueuePosition(int)}
+     * would play them.
+     *
+     * @param count maximum number of videos to return
+     */
+    public List<YouTubeVideo> getUpcomingVideos(int count)
+    {
+        List<YouTubeVideo> upcoming = new ArrayList<>();
+        int size = getCurrentQueueSize();
+        for (int i = 1; i <= count && i < size; i++) {
+            upcoming.add(playingQueue.get((currentIndex + i) % size));
+        }
+        return upcoming;
+    }
+
     public int getCurrentVideoIndex(String youTubeVideoId)
     {
         // Set the current index on queue from the queue Id:
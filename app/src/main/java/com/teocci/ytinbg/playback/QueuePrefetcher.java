@@ -0,0 +1,151 @@
+package com.teocci.ytinbg.playback;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.util.SparseArray;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.teocci.ytinbg.model.YouTubeVideo;
+import com.teocci.ytinbg.utils.Config;
+import com.teocci.ytinbg.utils.LogHelper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import at.huber.youtubeExtractor.BatchExtractor;
+import at.huber.youtubeExtractor.VideoMeta;
+import at.huber.youtubeExtractor.YtFile;
+
+/**
+ * Created by teocci.
+ * Resolves the stream urls of the upcoming queue items while the current one plays.
+ * <p>
+ * The resolved urls end up in the extractor's stream url cache, so {@link LocalPlayback} gets
+ * them without a round trip when the track changes. Optionally the first bytes of each upcoming
+ * audio stream are loaded into the {@link AudioCache} as well.
+ *
+ * @author teocci@yandex.com on 2017-Jun-08
+ */
+
+public class QueuePrefetcher
+{
+    private static final String TAG = LogHelper.makeLogTag(QueuePrefetcher.class);
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private final Context context;
+    private BatchExtractor batchExtractor;
+    private boolean preBufferEnabled = true;
+
+    // Videos that were already handed to the extractor for the current look-ahead window
+    private final Set<String> requestedIds = new HashSet<>();
+
+    public QueuePrefetcher(Context context)
+    {
+        this.context = context.getApplicationContext();
+        this.batchExtractor = createBatchExtractor();
+    }
+
+    public void setPreBufferEnabled(boolean preBufferEnabled)
+    {
+        this.preBufferEnabled = preBufferEnabled;
+    }
+
+    /**
+     * Starts resolving the given videos. Videos that are already being resolved are skipped.
+     *
+     * @param upcoming the videos that will be played next
+     */
+    public void prefetch(List<YouTubeVideo> upcoming)
+    {
+        Set<String> upcomingIds = new HashSet<>();
+        List<String> newIds = new ArrayList<>();
+        for (YouTubeVideo youTubeVideo : upcoming) {
+            String youTubeVideoId = youTubeVideo.getId();
+            upcomingIds.add(youTubeVideoId);
+            if (!requestedIds.contains(youTubeVideoId)) {
+                newIds.add(youTubeVideoId);
+            }
+        }
+        // Forget videos that left the window so they are resolved again if they come back
+        requestedIds.retainAll(upcomingIds);
+        requestedIds.addAll(newIds);
+        if (newIds.isEmpty()) return;
+
+        LogHelper.d(TAG, "prefetch | ", newIds);
+        batchExtractor.extractAll(newIds, new BatchExtractor.Callback()
+        {
+            @Override
+            public void onExtractionComplete(String videoId, SparseArray<YtFile> ytFiles,
+                                             VideoMeta videoMeta)
+            {
+                if (ytFiles == null) {
+                    LogHelper.e(TAG, "prefetch | could not resolve ", videoId);
+                    requestedIds.remove(videoId);
+                    return;
+                }
+                if (preBufferEnabled && requestedIds.contains(videoId)) {
+                    YtFile ytFile = StreamSelector.selectStream(context, ytFiles);
+                    if (ytFile != null) {
+                        preBuffer(Uri.parse(ytFile.getUrl()));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops all pending work, e.g. when the playback stops.
+     */
+    public void cancel()
+    {
+        batchExtractor.cancel();
+        batchExtractor = createBatchExtractor();
+        requestedIds.clear();
+    }
+
+    private BatchExtractor createBatchExtractor()
+    {
+        // Same options as LocalPlayback, otherwise the cached urls would not match
+        BatchExtractor extractor = new BatchExtractor(context);
+        extractor.setParseDashManifest(true);
+        extractor.setIncludeWebM(true);
+        return extractor;
+    }
+
+    /**
+     * Loads the first {@link Config#PREFETCH_BUFFER_BYTES} of the stream into the audio cache.
+     */
+    private void preBuffer(final Uri uri)
+    {
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                DataSource dataSource = AudioCache.buildDataSourceFactory(context).createDataSource();
+                byte[] buffer = new byte[READ_BUFFER_SIZE];
+                try {
+                    dataSource.open(new DataSpec(uri, 0, Config.PREFETCH_BUFFER_BYTES, null));
+                    while (dataSource.read(buffer, 0, buffer.length) != C.RESULT_END_OF_INPUT) {
+                        // Everything read goes to the cache
+                    }
+                } catch (IOException e) {
+                    LogHelper.w(TAG, e, "preBuffer | failed for ", uri);
+                } finally {
+                    try {
+                        dataSource.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,153 @@
+package com.teocci.ytinbg.playback;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.PowerManager;
+import android.util.SparseArray;
+
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+import com.teocci.ytinbg.utils.Config;
+import com.teocci.ytinbg.utils.LogHelper;
+import com.teocci.ytinbg.utils.NetworkHelper;
+
+import at.huber.youtubeExtractor.Format;
+import at.huber.youtubeExtractor.YtFile;
+
+/**
+ * Created by teocci.
+ * Picks the audio stream to play out of the files returned by the extractor.
+ * <p>
+ * The policy is a bitrate limit which depends on the connection: none on Wi-Fi,
+ * {@link Config#METERED_MAX_AUDIO_BITRATE} on metered connections or in battery saver mode,
+ * {@link Config#SLOW_MAX_AUDIO_BITRATE} on 2G. It is lowered further to half of the throughput
+ * measured by the {@link AudioCache} downloads, so playback starts quickly on a slow link.
+ * Below the limit the stream sounding best for its bitrate wins, Opus needs fewer bits than
+ * AAC for the same quality.
+ *
+ * @author teocci@yandex.com on 2017-Jun-08
+ */
+
+public class StreamSelector
+{
+    private static final String TAG = LogHelper.makeLogTag(StreamSelector.class);
+
+    public static final int NO_LIMIT = Integer.MAX_VALUE;
+
+    // Shared by all downloads of the player so the estimate survives track changes
+    private static final DefaultBandwidthMeter bandwidthMeter = new DefaultBandwidthMeter();
+
+    public static DefaultBandwidthMeter getBandwidthMeter()
+    {
+        return bandwidthMeter;
+    }
+
+    /**
+     * Selects the stream to play under the current network and battery conditions.
+     *
+     * @param ytFiles Array of available streams
+     * @return the stream to play or null if none can be played
+     */
+    public static YtFile selectStream(Context context, SparseArray<YtFile> ytFiles)
+    {
+        return selectStream(ytFiles, getMaxAudioBitrate(context), canPlayWebM());
+    }
+
+    /**
+     * @param maxAudioBitrate the highest audio bitrate in kbit/s to pick if there is a choice
+     * @param allowWebM       false if WebM streams must not be picked
+     * @return the stream to play or null if none can be played
+     */
+    public static YtFile selectStream(SparseArray<YtFile> ytFiles, int maxAudioBitrate,
+                                      boolean allowWebM)
+    {
+        YtFile bestFile = null;
+        long bestRank = Long.MIN_VALUE;
+        for (int i = 0; i < ytFiles.size(); i++) {
+            YtFile ytFile = ytFiles.valueAt(i);
+            // Streams of unknown itags have no format
+            if (ytFile == null || ytFile.getFormat() == null) continue;
+            long rank = getRank(ytFile.getFormat(), maxAudioBitrate, allowWebM);
+            if (rank > bestRank) {
+                bestRank = rank;
+                bestFile = ytFile;
+            }
+        }
+        if (bestFile != null) {
+            LogHelper.d(TAG, "selectStream | itag ", bestFile.getFormat().getItag(),
+                    " limit ", maxAudioBitrate);
+        }
+        return bestFile;
+    }
+
+    /**
+     * @return the highest audio bitrate in kbit/s worth picking right now
+     */
+    public static int getMaxAudioBitrate(Context context)
+    {
+        int maxBitrate = NO_LIMIT;
+        if (NetworkHelper.isActiveNetworkSlow(context)) {
+            maxBitrate = Config.SLOW_MAX_AUDIO_BITRATE;
+        } else if (NetworkHelper.isActiveNetworkMetered(context) || isPowerSaveMode(context)) {
+            maxBitrate = Config.METERED_MAX_AUDIO_BITRATE;
+        }
+
+        long throughput = bandwidthMeter.getBitrateEstimate();
+        if (throughput != BandwidthMeter.NO_ESTIMATE) {
+            // Leave half of the link for buffering ahead
+            maxBitrate = (int) Math.min(maxBitrate, throughput / 2000);
+        }
+        return maxBitrate;
+    }
+
+    /**
+     * Ranks audio only streams within the limit first, by their quality. Then audio only
+     * streams above it, the smaller the better. Streams with video come last, H.264 before
+     * VP8 before MPEG-4 and the smaller video first.
+     */
+    private static long getRank(Format format, int maxAudioBitrate, boolean allowWebM)
+    {
+        int caps = format.getCapabilities();
+        // HLS can't be played by the ExtractorMediaSource
+        if ((caps & (Format.HAS_AUDIO | Format.HLS)) != Format.HAS_AUDIO) return Long.MIN_VALUE;
+        if (!allowWebM && (caps & Format.WEBM) != 0) return Long.MIN_VALUE;
+
+        int bitrate = format.getAudioBitrate();
+        if ((caps & Format.AUDIO_ONLY) != 0) {
+            if (bitrate <= maxAudioBitrate) {
+                // The lower bitrate wins among streams of the same quality
+                return (3L << 32) + (getEffectiveBitrate(caps, bitrate) << 12) - bitrate;
+            }
+            return (2L << 32) - bitrate;
+        }
+
+        int codecRank = (caps & Format.VIDEO_H264) != 0 ? 3 :
+                (caps & Format.VIDEO_VP8) != 0 ? 2 :
+                        (caps & Format.VIDEO_MPEG4) != 0 ? 1 : 0;
+        return (1L << 32) + (codecRank << 16) - format.getHeight();
+    }
+
+    /**
+     * @return the AAC bitrate in kbit/s giving about the same quality
+     */
+    private static long getEffectiveBitrate(int caps, int bitrate)
+    {
+        if ((caps & Format.AUDIO_OPUS) != 0) return bitrate * 3 / 2;
+        if ((caps & Format.AUDIO_VORBIS) != 0) return bitrate * 11 / 10;
+        if ((caps & Format.AUDIO_MP3) != 0) return bitrate * 4 / 5;
+        return bitrate;
+    }
+
+    private static boolean canPlayWebM()
+    {
+        // Opus is decoded by the platform from Lollipop on
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
+    }
+
+    private static boolean isPowerSaveMode(Context context)
+    {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) return false;
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        return powerManager != null && powerManager.isPowerSaveMode();
+    }
+}
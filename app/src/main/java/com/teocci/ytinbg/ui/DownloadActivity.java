@@ -29,6 +29,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
+import at.huber.youtubeExtractor.Format;
 import at.huber.youtubeExtractor.VideoMeta;
 import at.huber.youtubeExtractor.YouTubeExtractor;
 import at.huber.youtubeExtractor.YtFile;
@@ -99,7 +100,7 @@ public class DownloadActivity extends Activity
                     itag = ytFiles.keyAt(i);
                     YtFile ytFile = ytFiles.get(itag);
 
-                    if (ytFile.getFormat().getHeight() == -1 || ytFile.getFormat().getHeight() >= 360) {
+                    if (ytFile.getFormat().matches(Format.AUDIO_ONLY) || ytFile.getFormat().getHeight() >= 360) {
                         addFormatToList(ytFile, ytFiles);
                     }
                 }
@@ -120,24 +121,24 @@ public class DownloadActivity extends Activity
 
     private void addFormatToList(YtFile ytFile, SparseArray<YtFile> ytFiles)
     {
+        int caps = ytFile.getFormat().getCapabilities();
         int height = ytFile.getFormat().getHeight();
-        if (height != -1) {
+        if ((caps & Format.HAS_VIDEO) != 0) {
             for (YouTubeFragmentedVideo frVideo : formatsToShowList) {
+                // Same height and both or neither at 60 fps
                 if (frVideo.height == height && (frVideo.videoFile == null ||
-                        frVideo.videoFile.getFormat().getFps() == ytFile.getFormat().getFps())) {
+                        ((frVideo.videoFile.getFormat().getCapabilities() ^ caps) & Format.HIGH_FPS) == 0)) {
                     return;
                 }
             }
         }
         YouTubeFragmentedVideo frVideo = new YouTubeFragmentedVideo();
         frVideo.height = height;
-        if (ytFile.getFormat().isDashContainer()) {
-            if (height > 0) {
-                frVideo.videoFile = ytFile;
-                frVideo.audioFile = ytFiles.get(Config.YT_ITAG_FOR_AUDIO);
-            } else {
-                frVideo.audioFile = ytFile;
-            }
+        if ((caps & Format.AUDIO_ONLY) != 0) {
+            frVideo.audioFile = ytFile;
+        } else if ((caps & Format.DASH) != 0) {
+            frVideo.videoFile = ytFile;
+            frVideo.audioFile = ytFiles.get(Config.YT_ITAG_FOR_AUDIO);
         } else {
             frVideo.videoFile = ytFile;
         }
@@ -37,6 +37,7 @@ import android.support.v7.widget.SearchView;
 import android.support.v7.widget.Toolbar;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.widget.Toast;
 
 import com.teocci.ytinbg.BuildConfig;
 import com.teocci.ytinbg.JsonAsyncTask;
@@ -50,14 +51,20 @@ import com.teocci.ytinbg.ui.fragments.RecentlyWatchedFragment;
 import com.teocci.ytinbg.ui.fragments.SearchFragment;
 import com.teocci.ytinbg.utils.Config;
 import com.teocci.ytinbg.utils.LogHelper;
+import com.teocci.ytinbg.utils.NetworkExecutor;
 import com.teocci.ytinbg.utils.NetworkHelper;
 
+import java.io.File;
+import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
+import at.huber.youtubeExtractor.DecipherWarmUp;
+import at.huber.youtubeExtractor.ExtractionMetrics;
+
 import static com.teocci.ytinbg.utils.Config.INTENT_SESSION_TOKEN;
 import static com.teocci.ytinbg.utils.Config.KEY_SESSION_TOKEN;
 import static com.teocci.ytinbg.youtube.YouTubeSingleton.getCredential;
@@ -196,6 +203,11 @@ public class MainActivity extends AppCompatActivity
         checkAndRequestPermissions();
         networkConf = new NetworkHelper(this);
 
+        // Gets the decipher functions of the player ready before the first video is played
+        if (Config.DECIPHER_WARM_UP && !NetworkHelper.isActiveNetworkMetered(context)) {
+            DecipherWarmUp.start(context);
+        }
+
         setupTabIcons();
         loadColor();
 
@@ -379,7 +391,7 @@ public class MainActivity extends AppCompatActivity
                 // This also disables onSuggestionClick triggering
                 if (suggestion.length() > 2) { //make suggestions after 3rd letter
                     if (networkConf.isNetworkAvailable(getApplicationContext())) {
-                        new JsonAsyncTask(new JsonAsyncResponse()
+                        JsonAsyncTask suggestionTask = new JsonAsyncTask(new JsonAsyncResponse()
                         {
                             @Override
                             public void processFinish(ArrayList<String> result)
@@ -399,7 +411,9 @@ public class MainActivity extends AppCompatActivity
                                 suggestionAdapter.swapCursor(cursor);
 
                             }
-                        }).execute(suggestion);
+                        });
+                        NetworkExecutor.getInstance().execute(suggestionTask,
+                                NetworkExecutor.PRIORITY_INTERACTIVE, NetworkExecutor.REQUEST_SUGGESTIONS, suggestion);
                         return true;
                     }
                 }
@@ -414,6 +428,8 @@ public class MainActivity extends AppCompatActivity
         if (chosenAccountName != null) {
             removeAccountItem.setVisible(true);
         }
+
+        menu.findItem(R.id.action_extraction_metrics).setVisible(BuildConfig.DEBUG);
         return true;
     }
 
@@ -472,11 +488,45 @@ public class MainActivity extends AppCompatActivity
             case R.id.action_search:
                 MenuItemCompat.expandActionView(item);
                 return true;
+            case R.id.action_extraction_metrics:
+                showExtractionMetrics();
+                return true;
         }
 
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Shows the timings and counters collected by the extractor, they can be exported
+     * into a file of the app for comparing them later
+     */
+    private void showExtractionMetrics()
+    {
+        new AlertDialog.Builder(MainActivity.this)
+                .setTitle(R.string.action_extraction_metrics)
+                .setMessage(ExtractionMetrics.getInstance().dump())
+                .setPositiveButton(R.string.action_export, new DialogInterface.OnClickListener()
+                {
+                    public void onClick(DialogInterface dialog, int which)
+                    {
+                        File dir = getExternalFilesDir(null);
+                        File file = new File(dir != null ? dir : getFilesDir(),
+                                Config.METRICS_DUMP_FILE);
+                        try {
+                            ExtractionMetrics.getInstance().writeTo(file);
+                            Toast.makeText(MainActivity.this, getString(R.string.metrics_exported,
+                                    file.getAbsolutePath()), Toast.LENGTH_LONG).show();
+                        } catch (IOException e) {
+                            LogHelper.e(TAG, e, "showExtractionMetrics");
+                            Toast.makeText(MainActivity.this, R.string.metrics_export_failed,
+                                    Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                })
+                .setNegativeButton(android.R.string.ok, null)
+                .show();
+    }
+
     /**
      * Handle search intent and queries YouTube for videos
      *
@@ -1,6 +1,7 @@
 package com.teocci.ytinbg.ui.fragments;
 
 import android.content.Intent;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
 import android.support.v4.widget.SwipeRefreshLayout;
@@ -23,6 +24,7 @@ import com.teocci.ytinbg.model.YouTubeVideo;
 import com.teocci.ytinbg.ui.decoration.DividerDecoration;
 import com.teocci.ytinbg.utils.Config;
 import com.teocci.ytinbg.utils.LogHelper;
+import com.teocci.ytinbg.utils.NetworkExecutor;
 import com.teocci.ytinbg.utils.NetworkHelper;
 import com.teocci.ytinbg.youtube.YouTubePlaylistLoader;
 import com.teocci.ytinbg.youtube.YouTubePlaylistVideoLoader;
@@ -43,8 +45,6 @@ public class PlaylistFragment extends Fragment implements AdapterView.OnItemClic
     private PlaylistAdapter playlistAdapter;
     private String chosenAccountName;
 
-    private YouTubePlaylistLoader ytPlaylistLoader;
-    private YouTubePlaylistVideoLoader ytPlaylistVideoLoader;
     private TextView userNameTextView;
     private NetworkHelper networkConf;
     private SwipeRefreshLayout swipeToRefresh;
@@ -59,12 +59,6 @@ public class PlaylistFragment extends Fragment implements AdapterView.OnItemClic
     {
         super.onCreate(savedInstanceState);
 
-        ytPlaylistLoader = new YouTubePlaylistLoader(getContext());
-        ytPlaylistLoader.setYouTubePlaylistReceiver(this);
-
-        ytPlaylistVideoLoader = new YouTubePlaylistVideoLoader(getActivity());
-        ytPlaylistVideoLoader.setYouTubePlaylistReceiver(this);
-
         networkConf = new NetworkHelper(getActivity());
     }
 
@@ -121,6 +115,9 @@ public class PlaylistFragment extends Fragment implements AdapterView.OnItemClic
 
     public void searchPlaylists()
     {
+        // A task runs only once, a newer request cancels the unfinished one
+        YouTubePlaylistLoader ytPlaylistLoader = new YouTubePlaylistLoader(getContext());
+        ytPlaylistLoader.setYouTubePlaylistReceiver(this);
         ytPlaylistLoader.acquire();
     }
 
@@ -153,14 +150,66 @@ public class PlaylistFragment extends Fragment implements AdapterView.OnItemClic
     @Override
     public void onItemClick(AdapterView<?> parent, View view, int position, long id)
     {
+        // The local copy is read on the pool, the result comes back in openPlaylist()
+        NetworkExecutor.getInstance().execute(
+                new LocalPlaylistTask(playlistAdapter.getYouTubePlaylist(position)),
+                NetworkExecutor.PRIORITY_INTERACTIVE,
+                NetworkExecutor.REQUEST_LOCAL_PLAYLIST
+        );
+    }
+
+    /**
+     * Plays the playlist from its local copy, if there is one, and acquires the playlist
+     * unless the copy is of its current version
+     *
+     * @param youTubePlaylist - the chosen playlist
+     * @param localVideos     - the local copy, empty if the playlist was never opened
+     * @param upToDate        - whether the local copy was made at the current ETag
+     */
+    private void openPlaylist(YouTubePlaylist youTubePlaylist, List<YouTubeVideo> localVideos,
+                              boolean upToDate)
+    {
+        // A playlist opened before plays from its local copy right away
+        if (!localVideos.isEmpty()) {
+            playLocalCopy(localVideos);
+            if (upToDate) return;
+        }
+
         // Check network connectivity
         if (!networkConf.isNetworkAvailable(getActivity())) {
-            networkConf.createNetErrorDialog();
+            if (localVideos.isEmpty()) {
+                networkConf.createNetErrorDialog();
+            }
             return;
         }
 
         // Results are in onVideosReceived callback method
-        ytPlaylistVideoLoader.acquire(playlistAdapter.getYouTubePlaylist(position).getId());
+        YouTubePlaylistVideoLoader ytPlaylistVideoLoader = new YouTubePlaylistVideoLoader(getActivity());
+        ytPlaylistVideoLoader.setYouTubePlaylistReceiver(this);
+        ytPlaylistVideoLoader.setPlaylistEtag(youTubePlaylist.getEtag());
+        if (localVideos.isEmpty()) {
+            ytPlaylistVideoLoader.acquire(youTubePlaylist.getId());
+        } else {
+            // Brings the local copy up to date for the next time
+            ytPlaylistVideoLoader.refresh(youTubePlaylist.getId());
+        }
+    }
+
+    /**
+     * Plays the local copy of a playlist page by page like the loader does. One Intent with
+     * all videos of a large playlist could exceed the limit of a binder transaction.
+     *
+     * @param localVideos - the local copy, not empty
+     */
+    private void playLocalCopy(List<YouTubeVideo> localVideos)
+    {
+        int pageSize = (int) Config.NUMBER_OF_VIDEOS_RETURNED;
+        onPlaylistVideoReceived(new ArrayList<>(
+                localVideos.subList(0, Math.min(pageSize, localVideos.size()))));
+        for (int start = pageSize; start < localVideos.size(); start += pageSize) {
+            onPlaylistVideoPageReceived(new ArrayList<>(
+                    localVideos.subList(start, Math.min(start + pageSize, localVideos.size()))));
+        }
     }
 
     /**
@@ -175,12 +224,7 @@ public class PlaylistFragment extends Fragment implements AdapterView.OnItemClic
             swipeToRefresh.setRefreshing(false);
             return;
         }
-        //refresh playlistList in database
-        YouTubeSqlDb.getInstance().playlistModel().deleteAll();
-        for (YouTubePlaylist playlist : youTubePlaylistList) {
-            YouTubeSqlDb.getInstance().playlistModel().create(playlist);
-        }
-
+        // The loader synced the playlistList into the database already
         if (playlistAdapter != null) {
             getActivity().runOnUiThread(new Runnable()
             {
@@ -243,6 +287,23 @@ public class PlaylistFragment extends Fragment implements AdapterView.OnItemClic
         }
     }
 
+    /**
+     * Called when a further page of playlistList video items is received, the videos are
+     * appended to the playlist being played
+     *
+     * @param youTubeVideos - videos to be appended
+     */
+    @Override
+    public void onPlaylistVideoPageReceived(List<YouTubeVideo> youTubeVideos)
+    {
+        if (getActivity() == null || youTubeVideos.isEmpty()) return;
+
+        Intent serviceIntent = new Intent(getContext(), BackgroundAudioService.class);
+        serviceIntent.setAction(BackgroundAudioService.ACTION_APPEND);
+        serviceIntent.putExtra(Config.KEY_YOUTUBE_TYPE_PLAYLIST, (ArrayList) youTubeVideos);
+        getActivity().startService(serviceIntent);
+    }
+
     /**
      * Remove playlistList with specific ID from DB and list
      *
@@ -250,6 +311,7 @@ public class PlaylistFragment extends Fragment implements AdapterView.OnItemClic
      */
     private void removePlaylist(final String playlistId)
     {
+        YouTubeSqlDb.getInstance().playlistModel().delete(playlistId);
         playlistAdapter.removeYouTubePlaylistById(playlistId);
     }
 
@@ -271,4 +333,35 @@ public class PlaylistFragment extends Fragment implements AdapterView.OnItemClic
         }
         return "";
     }
+
+    /**
+     * Reads the local copy of a playlist and whether it is of the current version of the
+     * playlist, then opens the playlist on the main thread
+     */
+    private class LocalPlaylistTask extends AsyncTask<Void, Void, List<YouTubeVideo>>
+    {
+        private final YouTubePlaylist youTubePlaylist;
+        private boolean upToDate;
+
+        private LocalPlaylistTask(YouTubePlaylist youTubePlaylist)
+        {
+            this.youTubePlaylist = youTubePlaylist;
+        }
+
+        @Override
+        protected List<YouTubeVideo> doInBackground(Void... params)
+        {
+            YouTubeSqlDb youTubeSqlDb = YouTubeSqlDb.getInstance();
+            String itemsEtag = youTubeSqlDb.playlistModel().readItemsEtag(youTubePlaylist.getId());
+            upToDate = itemsEtag != null && itemsEtag.equals(youTubePlaylist.getEtag());
+            return youTubeSqlDb.playlistItems().read(youTubePlaylist.getId());
+        }
+
+        @Override
+        protected void onPostExecute(List<YouTubeVideo> localVideos)
+        {
+            if (!isAdded()) return;
+            openPlaylist(youTubePlaylist, localVideos, upToDate);
+        }
+    }
 }
\ No newline at end of file
@@ -22,6 +22,7 @@ import com.teocci.ytinbg.interfaces.YouTubeVideoReceiver;
 import com.teocci.ytinbg.model.YouTubeVideo;
 import com.teocci.ytinbg.ui.decoration.DividerDecoration;
 import com.teocci.ytinbg.utils.Config;
+import com.teocci.ytinbg.utils.LogHelper;
 import com.teocci.ytinbg.utils.NetworkHelper;
 import com.teocci.ytinbg.youtube.YouTubeVideoLoader;
 
@@ -42,6 +43,8 @@ public class SearchFragment extends RecyclerFragment implements YouTubeVideoRece
 
     private String currentQuery;
     private String nextPageToken;
+    // The page token the next page was prefetched for, so it is only requested once
+    private String prefetchedPageToken;
     private int visibleThreshold = 4;
     private int lastVisibleItem, totalItemCount;
 
@@ -81,6 +84,7 @@ public class SearchFragment extends RecyclerFragment implements YouTubeVideoRece
             {
                 super.onScrolled(recyclerView, dx, dy);
                 totalItemCount = linearLayoutManager.getItemCount();
+                prefetchNextPage(linearLayoutManager.findLastVisibleItemPosition());
                 if (totalItemCount > Config.NUMBER_OF_VIDEOS_RETURNED - visibleThreshold) {
                     lastVisibleItem = linearLayoutManager.findLastVisibleItemPosition();
 //                Log.e(TAG, "totalItemCount: " + totalItemCount + " lastVisibleItem: " + lastVisibleItem);
@@ -95,6 +99,26 @@ public class SearchFragment extends RecyclerFragment implements YouTubeVideoRece
         return rootView;
     }
 
+    /**
+     * Starts loading the next page into the search cache once the user scrolled far enough
+     * that the page is likely to be needed, so it is there when the loader shows up.
+     *
+     * @param lastVisiblePosition the position of the last visible item
+     */
+    private void prefetchNextPage(int lastVisiblePosition)
+    {
+        if (nextPageToken == null || nextPageToken.equals(prefetchedPageToken)) return;
+        if (totalItemCount - lastVisiblePosition > Config.SEARCH_PREFETCH_THRESHOLD) return;
+        if (NetworkHelper.isActiveNetworkMetered(getActivity())) return;
+
+        prefetchedPageToken = nextPageToken;
+        YouTubeVideoLoader youTubeVideoLoader = new YouTubeVideoLoader(getActivity());
+        if (!youTubeVideoLoader.isCached(currentQuery, nextPageToken)) {
+            LogHelper.d(TAG, "Prefetching page: ", nextPageToken);
+            youTubeVideoLoader.prefetch(currentQuery, nextPageToken);
+        }
+    }
+
     @Override
     protected RecyclerView.LayoutManager getLayoutManager()
     {
@@ -176,6 +200,7 @@ public class SearchFragment extends RecyclerFragment implements YouTubeVideoRece
     public void searchQuery(String query)
     {
         currentQuery = query;
+        prefetchedPageToken = null;
         // Check network connectivity
         if (!networkConf.isNetworkAvailable(getActivity())) {
             networkConf.createNetErrorDialog();
@@ -238,6 +263,24 @@ public class SearchFragment extends RecyclerFragment implements YouTubeVideoRece
             }
         });
     }
+
+    /**
+     * Called when the durations and view counts of the received videos are known
+     *
+     * @param ytVideos - videos with their details
+     */
+    @Override
+    public void onVideoDetailsReceived(final List<YouTubeVideo> ytVideos)
+    {
+        if (videoListAdapter == null || getActivity() == null) return;
+        getActivity().runOnUiThread(new Runnable()
+        {
+            public void run()
+            {
+                videoListAdapter.updateYouTubeVideoDetails(ytVideos);
+            }
+        });
+    }
 //
 //    /**
 //     * Called when playlist cannot be found
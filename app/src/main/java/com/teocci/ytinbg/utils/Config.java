@@ -62,6 +62,38 @@ public final class Config
 
     public static final String KEY_LOCK = "YTinBG_lock";
 
+    // Number of upcoming queue items whose stream urls are resolved while the current one plays
+    public static final int PREFETCH_QUEUE_ITEMS = 2;
+    // Bytes of the next item's audio stream loaded into the audio cache ahead of time
+    public static final long PREFETCH_BUFFER_BYTES = 512 * 1024;
+    public static final long AUDIO_CACHE_SIZE = 64 * 1024 * 1024;
+
+    // Highest audio bitrate in kbit/s picked on metered connections or in battery saver mode
+    public static final int METERED_MAX_AUDIO_BITRATE = 128;
+    // Highest audio bitrate in kbit/s picked on 2G connections
+    public static final int SLOW_MAX_AUDIO_BITRATE = 64;
+    // Time the extraction of the urls to play may take before playback gives up
+    public static final long EXTRACTION_DEADLINE_MS = 20000;
+    // Load the decipher functions of the current player at start, unless on a metered network
+    public static final boolean DECIPHER_WARM_UP = true;
+
+    // Search pages kept in memory and on disk, and for how long they are served from there
+    public static final int SEARCH_CACHE_ENTRIES = 32;
+    public static final int SEARCH_CACHE_DISK_ENTRIES = 64;
+    public static final long SEARCH_CACHE_TTL = 10 * 60 * 1000;
+    // Remaining items below the last visible one at which the next search page is prefetched
+    public static final int SEARCH_PREFETCH_THRESHOLD = 20;
+
+    // ETag of the last synced playlist list and the account it belongs to
+    public static final String PREF_PLAYLISTS_ETAG = "playlists_etag";
+    public static final String PREF_PLAYLISTS_ACCOUNT = "playlists_account";
+
+    // Threads of the pool the data API requests and search suggestions run on
+    public static final int NETWORK_THREADS = 3;
+
+    // Name of the file the extraction metrics are exported to
+    public static final String METRICS_DUMP_FILE = "extraction_metrics.txt";
+
     // Action to thumbs up a media item
     public static final String CUSTOM_ACTION_THUMBS_UP = "com.teocci.ytinbg.THUMBS_UP";
     public static final String EXTRA_START_FULLSCREEN = "com.teocci.ytinbg.EXTRA_START_FULLSCREEN";
@@ -89,8 +121,8 @@ public final class Config
 
     // See: https://developers.google.com/youtube/v3/docs/playlistItems/list
     public static final String YOUTUBE_PLAYLIST_PART = "id,snippet,contentDetails,status";
-    public static final String YOUTUBE_PLAYLIST_FIELDS = "items(id,snippet/title,snippet/thumbnails/default/url," +
-            "contentDetails/itemCount,status)";
+    public static final String YOUTUBE_PLAYLIST_FIELDS = "etag,items(id,etag,snippet/title," +
+            "snippet/thumbnails/default/url,contentDetails/itemCount,status)";
     public static final String YOUTUBE_ACQUIRE_PLAYLIST_PART = "id,contentDetails,snippet";
     public static final String YOUTUBE_ACQUIRE_PLAYLIST_FIELDS = "items(contentDetails/videoId,snippet/title," +
             "snippet/thumbnails/default/url),nextPageToken";
@@ -101,7 +133,7 @@ public final class Config
     public static final String YOUTUBE_SEARCH_LIST_FIELDS = "pageInfo,nextPageToken,items(id/videoId,snippet/title," +
             "snippet/thumbnails/default/url)";
     public static final String YOUTUBE_VIDEO_LIST_PART = "id,contentDetails,statistics";
-    public static final String YOUTUBE_VIDEO_LIST_FIELDS = "items(contentDetails/duration,statistics/viewCount)";
+    public static final String YOUTUBE_VIDEO_LIST_FIELDS = "items(id,contentDetails/duration,statistics/viewCount)";
 
 
     public static final String YOUTUBE_VIDEO_PART = "id,snippet,contentDetails,statistics";
@@ -109,8 +141,7 @@ public final class Config
             "snippet/thumbnails/default/url,contentDetails/duration,statistics/viewCount)";
 
     public static final String YOUTUBE_PLAYLIST_VIDEO_PART = "id,contentDetails";
-    public static final String YOUTUBE_PLAYLIST_VIDEO_FIELDS = "items(contentDetails/duration)" +
-            "statistics/viewCount)";
+    public static final String YOUTUBE_PLAYLIST_VIDEO_FIELDS = "items(id,contentDetails/duration)";
 
     public static final String YOUTUBE_LANGUAGE_KEY = "hl";
     // video resource properties that the response will include.
@@ -0,0 +1,237 @@
+package com.teocci.ytinbg.utils;
+
+import android.os.AsyncTask;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Created by teocci.
+ * Runs the requests to the YouTube data API and the search suggestions on a small shared pool.
+ * <p>
+ * Waiting requests are taken by priority: search suggestions the user is typing first, then
+ * searches, then the playlist sync which runs in the background. Requests of the same
+ * priority run in the order they were made. A request given a tag supersedes the unfinished
+ * request with the same tag, which is cancelled and never delivers its result.
+ *
+ * @author teocci@yandex.com on 2017-Jun-08
+ */
+
+public final class NetworkExecutor
+{
+    private static final String TAG = LogHelper.makeLogTag(NetworkExecutor.class);
+
+    public static final int PRIORITY_INTERACTIVE = 0;
+    public static final int PRIORITY_SEARCH = 1;
+    public static final int PRIORITY_SYNC = 2;
+
+    // Tags of the requests, every caller has its own so it only supersedes its own requests
+    public static final String REQUEST_SUGGESTIONS = "suggestions";
+    public static final String REQUEST_VIDEO_SEARCH = "video_loader.search";
+    public static final String REQUEST_PLAYLISTS = "playlist_loader.playlists";
+    public static final String REQUEST_PLAYLIST_VIDEOS = "playlist_video_loader.playlist_videos";
+    public static final String REQUEST_LOCAL_PLAYLIST = "playlist_fragment.local_playlist";
+    public static final String REQUEST_SEARCH = "youtube_search.search";
+    public static final String REQUEST_SEARCH_PLAYLISTS = "youtube_search.playlists";
+    public static final String REQUEST_SEARCH_PLAYLIST_VIDEOS = "youtube_search.playlist_videos";
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static NetworkExecutor instance;
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong sequence = new AtomicLong();
+    // The unfinished request of each tag
+    private final Map<String, Job> jobs = new HashMap<>();
+
+    public static synchronized NetworkExecutor getInstance()
+    {
+        if (instance == null) {
+            instance = new NetworkExecutor();
+        }
+        return instance;
+    }
+
+    private NetworkExecutor()
+    {
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(
+                Config.NETWORK_THREADS,
+                Config.NETWORK_THREADS,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(),
+                new ThreadFactory()
+                {
+                    @Override
+                    public Thread newThread(Runnable runnable)
+                    {
+                        return new Thread(runnable, "Network #" + threadCount.incrementAndGet());
+                    }
+                }
+        );
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs the task on the pool instead of the serial AsyncTask executor. Its callbacks run
+     * on the main thread as usual, a superseded task gets onCancelled() instead of
+     * onPostExecute().
+     *
+     * @param task     the task to run
+     * @param priority one of the PRIORITY constants
+     * @param tag      the tag of the task or null if it supersedes nothing
+     * @param params   the parameters of the task
+     */
+    @SafeVarargs
+    public final <Params> void execute(final AsyncTask<Params, ?, ?> task, int priority, String tag,
+                                       Params... params)
+    {
+        Job job = new Job()
+        {
+            @Override
+            void cancel()
+            {
+                task.cancel(true);
+            }
+        };
+        task.executeOnExecutor(newLane(priority, tag, job), params);
+    }
+
+    /**
+     * Runs the runnable on the pool.
+     *
+     * @param priority one of the PRIORITY constants
+     * @param tag      the tag of the request or null if it supersedes nothing
+     * @param runnable the request
+     */
+    public void execute(int priority, String tag, Runnable runnable)
+    {
+        submit(priority, tag, new FutureTask<Void>(runnable, null));
+    }
+
+    /**
+     * Runs the callable on the pool.
+     * <p>
+     * A caller which waits for the result while the pool is busy may call
+     * {@link FutureTask#run()} itself, the callable then runs on the calling thread unless
+     * the pool started it already.
+     *
+     * @param priority one of the PRIORITY constants
+     * @param tag      the tag of the request or null if it supersedes nothing
+     * @param callable the request
+     * @return the future result of the request
+     */
+    public <T> FutureTask<T> submit(int priority, String tag, Callable<T> callable)
+    {
+        return submit(priority, tag, new FutureTask<>(callable));
+    }
+
+    private <T> FutureTask<T> submit(int priority, String tag, final FutureTask<T> future)
+    {
+        Job job = new Job()
+        {
+            @Override
+            void cancel()
+            {
+                future.cancel(true);
+            }
+        };
+        newLane(priority, tag, job).execute(future);
+        return future;
+    }
+
+    /**
+     * Cancels the unfinished request with the tag, if there is one.
+     */
+    public void cancel(String tag)
+    {
+        Job job;
+        synchronized (jobs) {
+            job = jobs.remove(tag);
+        }
+        if (job != null) {
+            job.cancel();
+        }
+    }
+
+    private Executor newLane(final int priority, final String tag, final Job job)
+    {
+        return new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                if (tag != null) {
+                    Job superseded;
+                    synchronized (jobs) {
+                        superseded = jobs.put(tag, job);
+                    }
+                    if (superseded != null) {
+                        LogHelper.d(TAG, "Superseding request ", tag);
+                        superseded.cancel();
+                    }
+                }
+                executor.execute(new Request(priority, sequence.getAndIncrement(), tag, job, command));
+            }
+        };
+    }
+
+    private abstract static class Job
+    {
+        abstract void cancel();
+    }
+
+    private final class Request implements Runnable, Comparable<Request>
+    {
+        private final int priority;
+        private final long sequence;
+        private final String tag;
+        private final Job job;
+        private final Runnable command;
+
+        private Request(int priority, long sequence, String tag, Job job, Runnable command)
+        {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.tag = tag;
+            this.job = job;
+            this.command = command;
+        }
+
+        @Override
+        public void run()
+        {
+            try {
+                // A cancelled FutureTask returns right away
+                command.run();
+            } finally {
+                if (tag != null) {
+                    synchronized (jobs) {
+                        if (jobs.get(tag) == job) {
+                            jobs.remove(tag);
+                        }
+                    }
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(Request other)
+        {
+            if (priority != other.priority) {
+                return priority < other.priority ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+}
@@ -7,7 +7,9 @@ import android.content.Intent;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.provider.Settings;
+import android.support.v4.net.ConnectivityManagerCompat;
 import android.support.v7.app.AlertDialog;
+import android.telephony.TelephonyManager;
 
 /**
  * Checks whether internet connection is available or not
@@ -44,6 +46,43 @@ public class NetworkHelper
         return activeNetworkInfo != null && activeNetworkInfo.isConnected();
     }
 
+    /**
+     * Checks whether the active connection is metered, e.g. mobile data or a hotspot
+     *
+     * @return true if the connection is metered or unknown
+     */
+    public static boolean isActiveNetworkMetered(Context context)
+    {
+        ConnectivityManager connectivityManager
+                = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        return ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager);
+    }
+
+    /**
+     * Checks whether the active connection is a 2G mobile connection
+     *
+     * @return boolean
+     */
+    public static boolean isActiveNetworkSlow(Context context)
+    {
+        ConnectivityManager connectivityManager
+                = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo activeNetworkInfo = connectivityManager.getActiveNetworkInfo();
+        if (activeNetworkInfo == null || activeNetworkInfo.getType() != ConnectivityManager.TYPE_MOBILE) {
+            return false;
+        }
+        switch (activeNetworkInfo.getSubtype()) {
+            case TelephonyManager.NETWORK_TYPE_GPRS:
+            case TelephonyManager.NETWORK_TYPE_EDGE:
+            case TelephonyManager.NETWORK_TYPE_CDMA:
+            case TelephonyManager.NETWORK_TYPE_1xRTT:
+            case TelephonyManager.NETWORK_TYPE_IDEN:
+                return true;
+            default:
+                return false;
+        }
+    }
+
     public void createNetErrorDialog()
     {
 
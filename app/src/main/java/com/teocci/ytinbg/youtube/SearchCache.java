@@ -0,0 +1,331 @@
+package com.teocci.ytinbg.youtube;
+
+import android.content.Context;
+import android.util.LruCache;
+
+import com.teocci.ytinbg.model.YouTubeVideo;
+import com.teocci.ytinbg.utils.Config;
+import com.teocci.ytinbg.utils.LogHelper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Created by teocci.
+ * Keeps the pages of recent searches in memory and on disk for a short time, so searching
+ * the same keywords again or paging back and forth does not spend API quota.
+ * <p>
+ * Pages are keyed by keywords, page token and language. Identical searches which run at the
+ * same time share one request.
+ *
+ * @author teocci@yandex.com on 2017-Jun-09
+ */
+
+public class SearchCache
+{
+    private static final String TAG = LogHelper.makeLogTag(SearchCache.class);
+
+    private static final String CACHE_DIR_NAME = "search";
+
+    private static SearchCache instance;
+
+    private final File cacheDir;
+    private final LruCache<String, Page> memoryCache = new LruCache<>(Config.SEARCH_CACHE_ENTRIES);
+    private final Map<String, FutureTask<Page>> inFlight = new HashMap<>();
+
+    public static synchronized SearchCache getInstance(Context context)
+    {
+        if (instance == null) {
+            instance = new SearchCache(
+                    new File(context.getApplicationContext().getCacheDir(), CACHE_DIR_NAME)
+            );
+        }
+        return instance;
+    }
+
+    private SearchCache(File cacheDir)
+    {
+        this.cacheDir = cacheDir;
+    }
+
+    public static String buildKey(String keywords, String pageToken, String language)
+    {
+        return language + '\n' + (pageToken == null ? "" : pageToken) + '\n' + keywords;
+    }
+
+    /**
+     * Returns the cached page or loads it. If the same page is being loaded already the
+     * calling thread waits for that load instead of starting another one.
+     *
+     * @param key    the key built by {@link #buildKey(String, String, String)}
+     * @param loader loads the page from the network, it is only called on a cache miss
+     * @return a copy of the page, so callers may change its videos
+     */
+    public Page load(final String key, final Callable<Page> loader) throws Exception
+    {
+        FutureTask<Page> task;
+        boolean owner = false;
+        synchronized (inFlight) {
+            Page page = getFromMemory(key);
+            if (page != null) {
+                LogHelper.d(TAG, "Cache hit: ", key);
+                return page.copy();
+            }
+            task = inFlight.get(key);
+            if (task == null) {
+                // The disk is read by the task, outside of the lock
+                task = new FutureTask<>(new Callable<Page>()
+                {
+                    @Override
+                    public Page call() throws Exception
+                    {
+                        Page page = getFromDisk(key);
+                        if (page != null) {
+                            LogHelper.d(TAG, "Cache hit on disk: ", key);
+                            return page;
+                        }
+                        // Failed searches throw and are not cached
+                        page = loader.call();
+                        put(key, page);
+                        return page;
+                    }
+                });
+                inFlight.put(key, task);
+                owner = true;
+            } else {
+                LogHelper.d(TAG, "Joining search in flight: ", key);
+            }
+        }
+
+        if (owner) {
+            try {
+                task.run();
+            } finally {
+                synchronized (inFlight) {
+                    inFlight.remove(key);
+                }
+            }
+        }
+
+        try {
+            Page page = task.get();
+            return page != null ? page.copy() : null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    /**
+     * Only looks at the memory, so it may be called on the main thread. A page which is on
+     * disk only counts as missing, loading it just reads the disk.
+     *
+     * @return true if the page is in memory and not expired or being loaded
+     */
+    public boolean contains(String key)
+    {
+        synchronized (inFlight) {
+            return inFlight.containsKey(key) || getFromMemory(key) != null;
+        }
+    }
+
+    public void clear()
+    {
+        memoryCache.evictAll();
+        File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private Page getFromMemory(String key)
+    {
+        Page page = memoryCache.get(key);
+        if (page != null && page.isExpired()) {
+            memoryCache.remove(key);
+            getFile(key).delete();
+            return null;
+        }
+        return page;
+    }
+
+    private Page getFromDisk(String key)
+    {
+        Page page = readFromDisk(key);
+        if (page == null) return null;
+        if (page.isExpired()) {
+            getFile(key).delete();
+            return null;
+        }
+        memoryCache.put(key, page);
+        return page;
+    }
+
+    private void put(String key, Page page)
+    {
+        // Empty pages are most likely failed requests
+        if (page == null || page.videos.isEmpty()) return;
+        memoryCache.put(key, page);
+        writeToDisk(key, page);
+    }
+
+    private Page readFromDisk(String key)
+    {
+        File file = getFile(key);
+        if (!file.exists()) return null;
+
+        ObjectInputStream in = null;
+        try {
+            in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            Page page = (Page) in.readObject();
+            return key.equals(page.key) ? page : null;
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            LogHelper.w(TAG, e, "Dropping unreadable cache file ", file.getName());
+            file.delete();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void writeToDisk(String key, Page page)
+    {
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) return;
+        trimDiskCache();
+
+        ObjectOutputStream out = null;
+        try {
+            out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(getFile(key))));
+            out.writeObject(page);
+        } catch (IOException e) {
+            LogHelper.w(TAG, e, "Could not write the search page ", key);
+            getFile(key).delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Removes the oldest files so there is room for one more.
+     */
+    private void trimDiskCache()
+    {
+        File[] files = cacheDir.listFiles();
+        if (files == null || files.length < Config.SEARCH_CACHE_DISK_ENTRIES) return;
+
+        Arrays.sort(files, new Comparator<File>()
+        {
+            @Override
+            public int compare(File lhs, File rhs)
+            {
+                long lhsModified = lhs.lastModified();
+                long rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+        for (int i = 0; i <= files.length - Config.SEARCH_CACHE_DISK_ENTRIES; i++) {
+            files[i].delete();
+        }
+    }
+
+    private File getFile(String key)
+    {
+        return new File(cacheDir, hash(key));
+    }
+
+    private static String hash(String key)
+    {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b & 0xff));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable)
+    {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * One page of search results.
+     */
+    public static class Page implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final String key;
+        private final List<YouTubeVideo> videos;
+        private final String nextPageToken;
+        private final long createdAt;
+
+        public Page(String key, List<YouTubeVideo> videos, String nextPageToken)
+        {
+            this(key, videos, nextPageToken, System.currentTimeMillis());
+        }
+
+        private Page(String key, List<YouTubeVideo> videos, String nextPageToken, long createdAt)
+        {
+            this.key = key;
+            this.videos = videos;
+            this.nextPageToken = nextPageToken;
+            this.createdAt = createdAt;
+        }
+
+        public List<YouTubeVideo> getVideos()
+        {
+            return videos;
+        }
+
+        public String getNextPageToken()
+        {
+            return nextPageToken;
+        }
+
+        private boolean isExpired()
+        {
+            long age = System.currentTimeMillis() - createdAt;
+            return age < 0 || age > Config.SEARCH_CACHE_TTL;
+        }
+
+        private Page copy()
+        {
+            List<YouTubeVideo> copies = new ArrayList<>(videos.size());
+            for (YouTubeVideo video : videos) {
+                copies.add(new YouTubeVideo(video));
+            }
+            return new Page(key, copies, nextPageToken, createdAt);
+        }
+    }
+}
@@ -1,19 +1,22 @@
 package com.teocci.ytinbg.youtube;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.os.AsyncTask;
+import android.preference.PreferenceManager;
 import android.util.Log;
 
 import com.google.api.client.googleapis.extensions.android.gms.auth.UserRecoverableAuthIOException;
 import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpStatusCodes;
 import com.google.api.services.youtube.YouTube;
-import com.google.api.services.youtube.model.Channel;
-import com.google.api.services.youtube.model.ChannelListResponse;
 import com.google.api.services.youtube.model.Playlist;
 import com.google.api.services.youtube.model.PlaylistListResponse;
+import com.teocci.ytinbg.database.YouTubeSqlDb;
 import com.teocci.ytinbg.interfaces.YouTubePlaylistReceiver;
 import com.teocci.ytinbg.model.YouTubePlaylist;
 import com.teocci.ytinbg.utils.Config;
+import com.teocci.ytinbg.utils.NetworkExecutor;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -21,7 +24,6 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
-import static com.teocci.ytinbg.utils.Config.YOUTUBE_CHANNEL_LIST;
 import static com.teocci.ytinbg.utils.Config.YOUTUBE_PLAYLIST_FIELDS;
 import static com.teocci.ytinbg.utils.Config.YOUTUBE_PLAYLIST_PART;
 import static com.teocci.ytinbg.youtube.YouTubeSingleton.getCredential;
@@ -80,11 +82,16 @@ public class YouTubePlaylistLoader extends AsyncTask<String, Void, List<YouTubeP
      */
     public void acquire()
     {
-        this.execute();
+        NetworkExecutor.getInstance().execute(this, NetworkExecutor.PRIORITY_SYNC,
+                NetworkExecutor.REQUEST_PLAYLISTS);
     }
 
     /**
-     * Search playlist for a current user
+     * Syncs the playlists of the current user into the database and returns them from there.
+     * <p>
+     * The request carries the ETag of the last sync, so while nothing changed YouTube answers
+     * 304 Not Modified and neither the response nor the database is touched. Otherwise only
+     * the playlists which changed are written.
      */
     public List<YouTubePlaylist> searchPlaylist()
     {
@@ -92,30 +99,32 @@ public class YouTubePlaylistLoader extends AsyncTask<String, Void, List<YouTubeP
             Log.e(TAG, "getCredential: is null!");
             return Collections.emptyList();
         }
-        if (getCredential().getSelectedAccountName() == null) {
+        String accountName = getCredential().getSelectedAccountName();
+        if (accountName == null) {
             Log.d(TAG, "loadInBackground: account not picked!");
             return Collections.emptyList();
         }
 
-        try {
-            ChannelListResponse channelListResponse = youtube.channels().list(YOUTUBE_CHANNEL_LIST)
-                    .setMine(true)
-                    .execute();
-
-            List<Channel> channelList = channelListResponse.getItems();
-            if (channelList.isEmpty()) {
-                Log.d(TAG, "Can't find user channel");
-            }
-            Channel channel = channelList.get(0);
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        YouTubeSqlDb.PlaylistModel playlistModel = YouTubeSqlDb.getInstance().playlistModel();
 
+        try {
             YouTube.Playlists.List searchList = youtube.playlists()
                     .list(YOUTUBE_PLAYLIST_PART)
                     .setKey(Config.YOUTUBE_API_KEY);
 
-            searchList.setChannelId(channel.getId());
+            searchList.setMine(true);
             searchList.setFields(YOUTUBE_PLAYLIST_FIELDS);
             searchList.setMaxResults(Config.NUMBER_OF_VIDEOS_RETURNED);
 
+            // The stored playlists belong to the account whose ETag is stored. The ETag is
+            // kept in the preferences, so it outlives the tables when they are recreated.
+            String etag = sp.getString(Config.PREF_PLAYLISTS_ETAG, null);
+            if (etag != null && accountName.equals(sp.getString(Config.PREF_PLAYLISTS_ACCOUNT, null))
+                    && !playlistModel.isEmpty()) {
+                searchList.getRequestHeaders().setIfNoneMatch(etag);
+            }
+
             PlaylistListResponse playListResponse = searchList.execute();
             List<Playlist> playlists = playListResponse.getItems();
 
@@ -135,16 +144,27 @@ public class YouTubePlaylistLoader extends AsyncTask<String, Void, List<YouTubeP
                             playlist.getId(),
                             playlist.getContentDetails().getItemCount(),
                             playlist.getStatus().getPrivacyStatus());
+                    playlistItem.setEtag(playlist.getEtag());
                     ytPlaylistList.add(playlistItem);
                 }
 
-                return ytPlaylistList;
+                playlistModel.sync(ytPlaylistList);
+                // Only stored once the playlists it stands for are
+                sp.edit()
+                        .putString(Config.PREF_PLAYLISTS_ETAG, playListResponse.getEtag())
+                        .putString(Config.PREF_PLAYLISTS_ACCOUNT, accountName)
+                        .apply();
+
+                return playlistModel.readAll();
             }
         } catch (UserRecoverableAuthIOException e) {
             Log.d(TAG, "loadInBackground: exception REQUEST_AUTHORIZATION");
             e.printStackTrace();
         } catch (GoogleJsonResponseException e) {
-            if (e.getStatusCode() == 404) {
+            if (e.getStatusCode() == HttpStatusCodes.STATUS_CODE_NOT_MODIFIED) {
+                Log.d(TAG, "Playlists not modified");
+                return playlistModel.readAll();
+            } else if (e.getStatusCode() == 404) {
                 youTubePlaylistReceiver.onPlaylistNotFound("empty", e.getStatusCode());
             } else {
                 Log.e(TAG, "GoogleJsonResponseException code: " + e.getDetails().getCode()
@@ -158,4 +178,4 @@ public class YouTubePlaylistLoader extends AsyncTask<String, Void, List<YouTubeP
 
         return Collections.emptyList();
     }
-}
\ No newline at end of file
+}
@@ -11,18 +11,23 @@ import com.google.api.services.youtube.model.PlaylistItem;
 import com.google.api.services.youtube.model.PlaylistItemListResponse;
 import com.google.api.services.youtube.model.Video;
 import com.google.api.services.youtube.model.VideoListResponse;
+import com.teocci.ytinbg.database.YouTubeSqlDb;
 import com.teocci.ytinbg.interfaces.YouTubePlaylistReceiver;
-import com.teocci.ytinbg.interfaces.YouTubeVideoReceiver;
 import com.teocci.ytinbg.model.YouTubeVideo;
 import com.teocci.ytinbg.utils.Config;
+import com.teocci.ytinbg.utils.NetworkExecutor;
 import com.teocci.ytinbg.utils.Utils;
 
 import java.io.IOException;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import static com.teocci.ytinbg.utils.Config.YOUTUBE_ACQUIRE_PLAYLIST_FIELDS;
 import static com.teocci.ytinbg.utils.Config.YOUTUBE_ACQUIRE_PLAYLIST_PART;
@@ -38,7 +43,7 @@ import static com.teocci.ytinbg.youtube.YouTubeSingleton.getYouTube;
  * @author teocci@yandex.com on 2017-Jun-09
  */
 
-public class YouTubePlaylistVideoLoader extends AsyncTask<String, Void, List<YouTubeVideo>>
+public class YouTubePlaylistVideoLoader extends AsyncTask<String, List<YouTubeVideo>, List<YouTubeVideo>>
 {
 
     private final static String TAG = YouTubePlaylistVideoLoader.class.getSimpleName();
@@ -47,10 +52,15 @@ public class YouTubePlaylistVideoLoader extends AsyncTask<String, Void, List<You
 
     private Context context;
     private String playlistId;
+    // The ETag of the playlist the videos are acquired at, kept with the local copy
+    private String playlistEtag;
 
     private YouTubePlaylistReceiver youTubePlaylistReceiver;
 
-
+    // Whether the first page went to the receiver already
+    private boolean firstPageDelivered = false;
+    // Whether the videos only update the local copy, the receiver plays that one already
+    private boolean refreshOnly = false;
 
     public YouTubePlaylistVideoLoader(Context context)
     {
@@ -70,10 +80,29 @@ public class YouTubePlaylistVideoLoader extends AsyncTask<String, Void, List<You
         this.youTubePlaylistReceiver = null;
     }
 
+    @Override
+    protected void onProgressUpdate(List<YouTubeVideo>... pages)
+    {
+        if (youTubePlaylistReceiver == null || refreshOnly) return;
+        for (List<YouTubeVideo> page : pages) {
+            if (firstPageDelivered) {
+                youTubePlaylistReceiver.onPlaylistVideoPageReceived(page);
+            } else {
+                firstPageDelivered = true;
+                youTubePlaylistReceiver.onPlaylistVideoReceived(page);
+            }
+        }
+    }
+
     @Override
     protected void onPostExecute(List<YouTubeVideo> ytVideos)
     {
-        youTubePlaylistReceiver.onPlaylistVideoReceived(ytVideos);
+        // The pages went to the receiver as they arrived, only a failed or empty
+        // playlist is left to report
+        if (youTubePlaylistReceiver == null || refreshOnly || firstPageDelivered) return;
+        youTubePlaylistReceiver.onPlaylistVideoReceived(
+                ytVideos != null ? ytVideos : Collections.<YouTubeVideo>emptyList()
+        );
     }
 
     @Override
@@ -97,7 +126,25 @@ public class YouTubePlaylistVideoLoader extends AsyncTask<String, Void, List<You
     public void acquire(String playlistId)
     {
         this.playlistId = playlistId;
-        this.execute();
+        NetworkExecutor.getInstance().execute(this, NetworkExecutor.PRIORITY_SYNC,
+                NetworkExecutor.REQUEST_PLAYLIST_VIDEOS);
+    }
+
+    /**
+     * Acquires all videos for a specific playlist into its local copy only. The receiver
+     * just hears about a playlist which does not exist anymore.
+     *
+     * @param playlistId - YouTube Playlist Id
+     */
+    public void refresh(String playlistId)
+    {
+        refreshOnly = true;
+        acquire(playlistId);
+    }
+
+    public void setPlaylistEtag(String playlistEtag)
+    {
+        this.playlistEtag = playlistEtag;
     }
 
     public void setYouTubePlaylistReceiver(YouTubePlaylistReceiver youTubePlaylistReceiver)
@@ -105,34 +152,23 @@ public class YouTubePlaylistVideoLoader extends AsyncTask<String, Void, List<You
         this.youTubePlaylistReceiver = youTubePlaylistReceiver;
     }
 
+    /**
+     * Acquires the playlist page by page. The durations of a page and the next page are
+     * requested on the pool at the same time, and every page is published as soon as its
+     * durations arrived, before waiting for the next page. So the playback starts after
+     * the first page.
+     */
     private List<YouTubeVideo> acquirePlaylistVideos()
     {
-
-        List<PlaylistItem> playlistItemList = new ArrayList<>();
         List<YouTubeVideo> playlistItems = new ArrayList<>();
-        String nextToken = "";
 
-        // Retrieve the playlist of the channel's uploaded videos.
-        YouTube.PlaylistItems.List playlistItemRequest;
+        PlaylistItemListResponse page;
         try {
-            playlistItemRequest = youtube.playlistItems().list(YOUTUBE_ACQUIRE_PLAYLIST_PART);
-            playlistItemRequest.setPlaylistId(playlistId);
-            playlistItemRequest.setKey(YOUTUBE_API_KEY);
-            playlistItemRequest.setMaxResults(Config.NUMBER_OF_VIDEOS_RETURNED);
-            playlistItemRequest.setFields(YOUTUBE_ACQUIRE_PLAYLIST_FIELDS);
-            // Call API one or more times to retrieve all items in the list. As long as API
-            // response returns a nextPageToken, there are still more items to retrieve.
-            //do {
-            //playlistItemRequest.setPageToken(nextToken);
-            PlaylistItemListResponse playlistItemResult = playlistItemRequest.execute();
-            playlistItemList.addAll(playlistItemResult.getItems());
-            //nextToken = playlistItemResult.getNextPageToken();
-            //} while (nextToken != null);
-
-            Log.d(TAG, "all items size: " + playlistItemList.size());
+            page = requestPage(null);
         } catch (GoogleJsonResponseException e) {
             if (e.getStatusCode() == 404) {
                 Log.d(TAG, "loadInBackground: 404 error");
+                YouTubeSqlDb.getInstance().playlistItems().delete(playlistId);
                 if (youTubePlaylistReceiver != null)
                     youTubePlaylistReceiver.onPlaylistNotFound(playlistId, e.getStatusCode());
             } else {
@@ -150,60 +186,161 @@ public class YouTubePlaylistVideoLoader extends AsyncTask<String, Void, List<You
             return Collections.emptyList();
         }
 
-        // Videos to get duration
-        YouTube.Videos.List videosList = null;
-        try {
-            videosList = youtube.videos().list(YOUTUBE_PLAYLIST_VIDEO_PART);
-            videosList.setKey(YOUTUBE_API_KEY);
-            videosList.setFields(YOUTUBE_PLAYLIST_VIDEO_FIELDS);
-
-            // Save all ids from searchList list in order to find video list
-            StringBuilder contentDetails = new StringBuilder();
-
-            int index = 0;
-            for (PlaylistItem result : playlistItemList) {
-                contentDetails.append(result.getContentDetails().getVideoId());
-                if (index < playlistItemList.size() - 1)
-                    contentDetails.append(",");
-                index++;
+        // Only a playlist acquired to its end replaces the local copy
+        boolean complete = true;
+        while (page != null && !isCancelled()) {
+            final List<PlaylistItem> items = page.getItems() != null
+                    ? page.getItems()
+                    : Collections.<PlaylistItem>emptyList();
+            FutureTask<Map<String, Video>> details = NetworkExecutor.getInstance().submit(
+                    NetworkExecutor.PRIORITY_SYNC,
+                    null,
+                    new Callable<Map<String, Video>>()
+                    {
+                        @Override
+                        public Map<String, Video> call() throws IOException
+                        {
+                            return requestDetails(items);
+                        }
+                    }
+            );
+
+            FutureTask<PlaylistItemListResponse> nextPage = null;
+            final String nextToken = page.getNextPageToken();
+            if (nextToken != null) {
+                nextPage = NetworkExecutor.getInstance().submit(
+                        NetworkExecutor.PRIORITY_SYNC,
+                        null,
+                        new Callable<PlaylistItemListResponse>()
+                        {
+                            @Override
+                            public PlaylistItemListResponse call() throws IOException
+                            {
+                                return requestPage(nextToken);
+                            }
+                        }
+                );
             }
 
-            // Find video list
-            videosList.setId(contentDetails.toString());
-        } catch (IOException e) {
-            e.printStackTrace();
+            Map<String, Video> videos;
+            try {
+                videos = await(details);
+            } catch (InterruptedException e) {
+                details.cancel(true);
+                if (nextPage != null)
+                    nextPage.cancel(true);
+                complete = false;
+                break;
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+                videos = Collections.emptyMap();
+                complete = false;
+            }
+
+            List<YouTubeVideo> ytVideos = new ArrayList<>(items.size());
+            for (PlaylistItem playlistItem : items) {
+                ytVideos.add(toYouTubeVideo(playlistItem, videos));
+            }
+            if (!ytVideos.isEmpty()) {
+                playlistItems.addAll(ytVideos);
+                publishProgress(ytVideos);
+            }
+
+            page = null;
+            if (nextPage != null) {
+                try {
+                    page = await(nextPage);
+                } catch (InterruptedException e) {
+                    nextPage.cancel(true);
+                    complete = false;
+                    break;
+                } catch (ExecutionException e) {
+                    // Stop here, the pages so far are playing already
+                    e.getCause().printStackTrace();
+                    complete = false;
+                }
+            }
         }
-        if (videosList == null) return Collections.emptyList();
 
-        VideoListResponse resp = null;
-        try {
-            resp = videosList.execute();
-        } catch (IOException e) {
-            e.printStackTrace();
+        Log.d(TAG, "all items size: " + playlistItems.size());
+        if (complete && !isCancelled()) {
+            YouTubeSqlDb.getInstance().playlistItems().replace(playlistId, playlistItems,
+                    playlistEtag);
         }
-        if (resp == null) return Collections.emptyList();
-
-        List<Video> videoResults = resp.getItems();
-        Iterator<PlaylistItem> pit = playlistItemList.iterator();
-        Iterator<Video> vit = videoResults.iterator();
-        while (pit.hasNext()) {
-            PlaylistItem playlistItem = pit.next();
-            Video videoItem = vit.next();
-
-            YouTubeVideo youTubeVideo = new YouTubeVideo();
-            youTubeVideo.setId(playlistItem.getContentDetails().getVideoId());
-            youTubeVideo.setTitle(playlistItem.getSnippet().getTitle());
-            youTubeVideo.setThumbnailURL(playlistItem.getSnippet().getThumbnails().getDefault().getUrl());
-            //video info
-            if (videoItem != null) {
-                String isoTime = videoItem.getContentDetails().getDuration();
-                String time = Utils.convertISO8601DurationToNormalTime(isoTime);
-                youTubeVideo.setDuration(time);
-            } else {
-                youTubeVideo.setDuration("NA");
+        return playlistItems;
+    }
+
+    /**
+     * Waits for a request submitted to the pool. Runs it here if the pool did not get to it yet.
+     */
+    private static <T> T await(FutureTask<T> request) throws InterruptedException, ExecutionException
+    {
+        request.run();
+        return request.get();
+    }
+
+    private PlaylistItemListResponse requestPage(String pageToken) throws IOException
+    {
+        YouTube.PlaylistItems.List playlistItemRequest = youtube.playlistItems().list(YOUTUBE_ACQUIRE_PLAYLIST_PART);
+        playlistItemRequest.setPlaylistId(playlistId);
+        playlistItemRequest.setKey(YOUTUBE_API_KEY);
+        playlistItemRequest.setMaxResults(Config.NUMBER_OF_VIDEOS_RETURNED);
+        playlistItemRequest.setFields(YOUTUBE_ACQUIRE_PLAYLIST_FIELDS);
+        playlistItemRequest.setPageToken(pageToken);
+        return playlistItemRequest.execute();
+    }
+
+    /**
+     * Requests the durations of one page, which holds as many videos as one request may ask for.
+     *
+     * @return the videos by their ID
+     */
+    private Map<String, Video> requestDetails(List<PlaylistItem> items) throws IOException
+    {
+        Map<String, Video> videos = new HashMap<>();
+        if (items.isEmpty()) return videos;
+
+        YouTube.Videos.List videosList = youtube.videos().list(YOUTUBE_PLAYLIST_VIDEO_PART);
+        videosList.setKey(YOUTUBE_API_KEY);
+        videosList.setFields(YOUTUBE_PLAYLIST_VIDEO_FIELDS);
+
+        // Save all ids from the page in order to find video list
+        StringBuilder contentDetails = new StringBuilder();
+        for (PlaylistItem item : items) {
+            if (contentDetails.length() > 0)
+                contentDetails.append(",");
+            contentDetails.append(item.getContentDetails().getVideoId());
+        }
+        videosList.setId(contentDetails.toString());
+
+        VideoListResponse resp = videosList.execute();
+        if (resp != null && resp.getItems() != null) {
+            for (Video video : resp.getItems()) {
+                videos.put(video.getId(), video);
             }
-            playlistItems.add(youTubeVideo);
         }
-        return playlistItems;
+        return videos;
+    }
+
+    private YouTubeVideo toYouTubeVideo(PlaylistItem playlistItem, Map<String, Video> videos)
+    {
+        YouTubeVideo youTubeVideo = new YouTubeVideo();
+        youTubeVideo.setId(playlistItem.getContentDetails().getVideoId());
+        youTubeVideo.setTitle(playlistItem.getSnippet().getTitle());
+        // Deleted and private videos have no thumbnails
+        if (playlistItem.getSnippet().getThumbnails() != null
+                && playlistItem.getSnippet().getThumbnails().getDefault() != null) {
+            youTubeVideo.setThumbnailURL(playlistItem.getSnippet().getThumbnails().getDefault().getUrl());
+        }
+        //video info
+        Video videoItem = videos.get(youTubeVideo.getId());
+        if (videoItem != null && videoItem.getContentDetails() != null) {
+            String isoTime = videoItem.getContentDetails().getDuration();
+            String time = Utils.convertISO8601DurationToNormalTime(isoTime);
+            youTubeVideo.setDuration(time);
+        } else {
+            youTubeVideo.setDuration("NA");
+        }
+        return youTubeVideo;
     }
-}
\ No newline at end of file
+}
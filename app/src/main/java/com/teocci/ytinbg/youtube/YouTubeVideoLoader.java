@@ -1,7 +1,9 @@
 package com.teocci.ytinbg.youtube;
 
 import android.content.Context;
+import android.database.sqlite.SQLiteException;
 import android.os.AsyncTask;
+import android.text.TextUtils;
 import android.util.Log;
 
 import com.google.api.services.youtube.YouTube;
@@ -9,17 +11,22 @@ import com.google.api.services.youtube.model.SearchListResponse;
 import com.google.api.services.youtube.model.SearchResult;
 import com.google.api.services.youtube.model.Video;
 import com.google.api.services.youtube.model.VideoListResponse;
+import com.teocci.ytinbg.database.YouTubeSqlDb;
 import com.teocci.ytinbg.interfaces.YouTubeVideoReceiver;
 import com.teocci.ytinbg.model.YouTubeVideo;
 import com.teocci.ytinbg.utils.Config;
+import com.teocci.ytinbg.utils.NetworkExecutor;
 import com.teocci.ytinbg.utils.Utils;
 
 import java.io.IOException;
 import java.math.BigInteger;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -41,7 +48,7 @@ import static com.teocci.ytinbg.youtube.YouTubeSingleton.getYouTube;
  * @author teocci@yandex.com on 2017-Jun-09
  */
 
-public class YouTubeVideoLoader extends AsyncTask<String, Void, List<YouTubeVideo>>
+public class YouTubeVideoLoader extends AsyncTask<String, List<YouTubeVideo>, List<YouTubeVideo>>
 {
     private static final String TAG = YouTubeVideoLoader.class.getSimpleName();
 
@@ -53,6 +60,8 @@ public class YouTubeVideoLoader extends AsyncTask<String, Void, List<YouTubeVide
     private String keywords;
     private String currentPageToken;
     private String nextPageToken;
+    // True once the videos were delivered without their details
+    private boolean videosDelivered;
 
     private YouTubeVideoReceiver youTubeVideoReceiver;
 
@@ -75,7 +84,23 @@ public class YouTubeVideoLoader extends AsyncTask<String, Void, List<YouTubeVide
     {
         if (keywords == null) return null;
         try {
-            return searchVideos();
+            SearchCache.Page page = SearchCache.getInstance(context).load(
+                    SearchCache.buildKey(keywords, currentPageToken, language),
+                    new Callable<SearchCache.Page>()
+                    {
+                        @Override
+                        public SearchCache.Page call() throws IOException
+                        {
+                            return searchVideos();
+                        }
+                    }
+            );
+            nextPageToken = page.getNextPageToken();
+            return page.getVideos();
+        } catch (IOException e) {
+            Log.e(TAG, "Could not initialize: " + e);
+            e.printStackTrace();
+            return new ArrayList<>();
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -83,10 +108,25 @@ public class YouTubeVideoLoader extends AsyncTask<String, Void, List<YouTubeVide
         return null;
     }
 
+    @Override
+    protected void onProgressUpdate(List<YouTubeVideo>... values)
+    {
+        videosDelivered = true;
+        if (youTubeVideoReceiver == null) return;
+        youTubeVideoReceiver.onVideosReceived(values[0], currentPageToken, nextPageToken);
+    }
+
     @Override
     protected void onPostExecute(List<YouTubeVideo> ytVideos)
     {
-        youTubeVideoReceiver.onVideosReceived(ytVideos, currentPageToken, nextPageToken);
+        if (youTubeVideoReceiver == null) return;
+        if (videosDelivered) {
+            if (ytVideos != null) {
+                youTubeVideoReceiver.onVideoDetailsReceived(ytVideos);
+            }
+        } else {
+            youTubeVideoReceiver.onVideosReceived(ytVideos, currentPageToken, nextPageToken);
+        }
     }
 
     /**
@@ -99,7 +139,8 @@ public class YouTubeVideoLoader extends AsyncTask<String, Void, List<YouTubeVide
         this.keywords = keywords;
         this.currentPageToken = null;
         this.nextPageToken = null;
-        this.execute();
+        NetworkExecutor.getInstance().execute(this, NetworkExecutor.PRIORITY_SEARCH,
+                NetworkExecutor.REQUEST_VIDEO_SEARCH);
     }
 
     /**
@@ -113,8 +154,34 @@ public class YouTubeVideoLoader extends AsyncTask<String, Void, List<YouTubeVide
         this.keywords = keywords;
         this.currentPageToken = currentPageToken;
         this.nextPageToken = null;
-//        this.execute();
-        this.executeOnExecutor(AsyncTask.SERIAL_EXECUTOR);
+        NetworkExecutor.getInstance().execute(this, NetworkExecutor.PRIORITY_SEARCH,
+                NetworkExecutor.REQUEST_VIDEO_SEARCH);
+    }
+
+    /**
+     * Loads a page into the {@link SearchCache} without delivering it, so a later
+     * {@link #search(String, String)} for it returns right away or joins this request.
+     *
+     * @param keywords         - query
+     * @param currentPageToken - contains the Page Token
+     */
+    public void prefetch(String keywords, String currentPageToken)
+    {
+        this.keywords = keywords;
+        this.currentPageToken = currentPageToken;
+        this.nextPageToken = null;
+        this.youTubeVideoReceiver = null;
+        // Speculative, so it waits behind everything the user asked for
+        NetworkExecutor.getInstance().execute(this, NetworkExecutor.PRIORITY_SYNC, null);
+    }
+
+    /**
+     * @return true if the page is cached or loading already
+     */
+    public boolean isCached(String keywords, String currentPageToken)
+    {
+        return SearchCache.getInstance(context)
+                .contains(SearchCache.buildKey(keywords, currentPageToken, language));
     }
 
     public void setYouTubeVideoReceiver(YouTubeVideoReceiver youTubeVideoReceiver)
@@ -123,132 +190,187 @@ public class YouTubeVideoLoader extends AsyncTask<String, Void, List<YouTubeVide
     }
 
     /**
-     * Search videos for a specific query
+     * Search videos for a specific query. The results are published as soon as the search
+     * returns, the durations and view counts are requested afterwards unless they are known
+     * from the recently watched or favorite videos.
      */
-    private List<YouTubeVideo> searchVideos()
+    private SearchCache.Page searchVideos() throws IOException
     {
         List<YouTubeVideo> ytVideos = new ArrayList<>();
-        try {
-            searchList = youtube.search().list(YOUTUBE_SEARCH_LIST_PART);
-
-            searchList.setQ(keywords);
-            searchList.setKey(Config.YOUTUBE_API_KEY);
-            searchList.setType(YOUTUBE_SEARCH_LIST_TYPE); //TODO ADD PLAYLISTS SEARCH
-            searchList.setMaxResults(Config.NUMBER_OF_VIDEOS_RETURNED);
-            searchList.setFields(YOUTUBE_SEARCH_LIST_FIELDS);
-            searchList.set(YOUTUBE_LANGUAGE_KEY, language);
-            if (currentPageToken != null) {
-                searchList.setPageToken(currentPageToken);
-            }
+        String nextToken = null;
+        searchList = youtube.search().list(YOUTUBE_SEARCH_LIST_PART);
+
+        searchList.setQ(keywords);
+        searchList.setKey(Config.YOUTUBE_API_KEY);
+        searchList.setType(YOUTUBE_SEARCH_LIST_TYPE); //TODO ADD PLAYLISTS SEARCH
+        searchList.setMaxResults(Config.NUMBER_OF_VIDEOS_RETURNED);
+        searchList.setFields(YOUTUBE_SEARCH_LIST_FIELDS);
+        searchList.set(YOUTUBE_LANGUAGE_KEY, language);
+        if (currentPageToken != null) {
+            searchList.setPageToken(currentPageToken);
+        }
 
 
-            final Pattern pattern = Pattern.compile(YT_REGEX);
-            final Matcher matcher = pattern.matcher(keywords);
+        final Pattern pattern = Pattern.compile(YT_REGEX);
+        final Matcher matcher = pattern.matcher(keywords);
 
-            if (matcher.find()) {
-                Log.e(TAG, "YouTube ID: " + matcher.group(1));
+        if (matcher.find()) {
+            Log.e(TAG, "YouTube ID: " + matcher.group(1));
 
-                YouTube.Videos.List singleVideo = youtube.videos().list(YOUTUBE_VIDEO_PART);
-                singleVideo.setKey(Config.YOUTUBE_API_KEY);
-                singleVideo.setFields(YOUTUBE_VIDEO_FIELDS);
-                singleVideo.set(YOUTUBE_LANGUAGE_KEY, language);
-                singleVideo.setId(matcher.group(1));
-                VideoListResponse resp = singleVideo.execute();
-                List<Video> videoResults = resp.getItems();
+            YouTube.Videos.List singleVideo = youtube.videos().list(YOUTUBE_VIDEO_PART);
+            singleVideo.setKey(Config.YOUTUBE_API_KEY);
+            singleVideo.setFields(YOUTUBE_VIDEO_FIELDS);
+            singleVideo.set(YOUTUBE_LANGUAGE_KEY, language);
+            singleVideo.setId(matcher.group(1));
+            VideoListResponse resp = singleVideo.execute();
+            List<Video> videoResults = resp.getItems();
 
-                for (Video videoResult : videoResults) {
-                    YouTubeVideo item = new YouTubeVideo();
+            for (Video videoResult : videoResults) {
+                YouTubeVideo item = new YouTubeVideo();
 
-                    if (videoResult != null) {
-                        // SearchList list info
-                        item.setTitle(videoResult.getSnippet().getTitle());
-                        item.setThumbnailURL(videoResult.getSnippet().getThumbnails().getDefault().getUrl());
-                        item.setId(videoResult.getId());
-
-                        // Video info
-                        if (videoResult.getStatistics() != null) {
-                            BigInteger viewsNumber = videoResult.getStatistics().getViewCount();
-                            String viewsFormatted = NumberFormat.getIntegerInstance().format(viewsNumber) + " views";
-                            item.setViewCount(viewsFormatted);
-                        }
-                        if (videoResult.getContentDetails() != null) {
-                            String isoTime = videoResult.getContentDetails().getDuration();
-                            String time = Utils.convertISO8601DurationToNormalTime(isoTime);
-                            item.setDuration(time);
-                        }
-                    } else {
-                        item.setDuration("NA");
-                    }
+                if (videoResult != null) {
+                    // SearchList list info
+                    item.setTitle(videoResult.getSnippet().getTitle());
+                    item.setThumbnailURL(videoResult.getSnippet().getThumbnails().getDefault().getUrl());
+                    item.setId(videoResult.getId());
+
+                    // Video info
+                    setDetails(item, videoResult);
+                } else {
+                    item.setDuration("NA");
+                }
 
-                    // Add to the list
-                    ytVideos.add(item);
+                // Add to the list
+                ytVideos.add(item);
+            }
+        } else {
+            YouTube.Videos.List videosList = youtube.videos().list(YOUTUBE_VIDEO_LIST_PART);
+            videosList.setKey(Config.YOUTUBE_API_KEY);
+            videosList.setFields(YOUTUBE_VIDEO_LIST_FIELDS);
+            videosList.set(YOUTUBE_LANGUAGE_KEY, language);
+
+            // Search Response
+            final SearchListResponse searchListResponse = searchList.execute();
+            Log.e(TAG, "Printed " + searchListResponse.getPageInfo().getResultsPerPage() +
+                    " out of " + searchListResponse.getPageInfo().getTotalResults() +
+                    ".\nCurrent page token: " + searchList.getPageToken() + "\n" +
+                    "Next page token: " + searchListResponse.getNextPageToken() +
+                    ".\nPrev page token: " + searchListResponse.getPrevPageToken());
+            final List<SearchResult> searchResults = searchListResponse.getItems();
+
+            // Stores the nextPageToken
+            nextToken = searchListResponse.getNextPageToken();
+
+            List<String> videoIds = new ArrayList<>();
+            for (SearchResult result : searchResults) {
+                if (result.getId() != null && result.getId().getVideoId() != null) {
+                    videoIds.add(result.getId().getVideoId());
                 }
-            } else {
-                YouTube.Videos.List videosList = youtube.videos().list(YOUTUBE_VIDEO_LIST_PART);
-                videosList.setKey(Config.YOUTUBE_API_KEY);
-                videosList.setFields(YOUTUBE_VIDEO_LIST_FIELDS);
-                videosList.set(YOUTUBE_LANGUAGE_KEY, language);
-
-                // Search Response
-                final SearchListResponse searchListResponse = searchList.execute();
-                Log.e(TAG, "Printed " + searchListResponse.getPageInfo().getResultsPerPage() +
-                        " out of " + searchListResponse.getPageInfo().getTotalResults() +
-                        ".\nCurrent page token: " + searchList.getPageToken() + "\n" +
-                        "Next page token: " + searchListResponse.getNextPageToken() +
-                        ".\nPrev page token: " + searchListResponse.getPrevPageToken());
-                final List<SearchResult> searchResults = searchListResponse.getItems();
-
-                // Stores the nextPageToken
-                nextPageToken = searchListResponse.getNextPageToken();
+            }
+            Map<String, YouTubeVideo> knownVideos = readKnownVideos(videoIds);
 
-                // Finds video list
-                videosList.setId(Utils.concatenateIDs(searchResults));
-                VideoListResponse resp = videosList.execute();
-                List<Video> videoResults = resp.getItems();
+            // Create the ytVideos list to be displayed in the UI
+            List<String> unknownIds = new ArrayList<>();
+            for (SearchResult result : searchResults) {
+                if (result.getId() == null || result.getId().getVideoId() == null) {
+                    continue;
+                }
 
-                // Create the ytVideos list to be displayed in the UI
-                int index = 0;
-                for (SearchResult result : searchResults) {
-                    if (result.getId() == null) {
-                        continue;
-                    }
+                YouTubeVideo item = new YouTubeVideo();
 
-                    YouTubeVideo item = new YouTubeVideo();
+                // SearchList list info
+                item.setTitle(result.getSnippet().getTitle());
+                item.setThumbnailURL(result.getSnippet().getThumbnails().getDefault().getUrl());
+                item.setId(result.getId().getVideoId());
 
-                    // SearchList list info
-                    item.setTitle(result.getSnippet().getTitle());
-                    item.setThumbnailURL(result.getSnippet().getThumbnails().getDefault().getUrl());
-                    item.setId(result.getId().getVideoId());
+                // Video info known from the local store
+                YouTubeVideo knownVideo = knownVideos.get(item.getId());
+                if (knownVideo != null) {
+                    item.setDuration(knownVideo.getDuration());
+                    item.setViewCount(knownVideo.getViewCount());
+                } else {
+                    unknownIds.add(item.getId());
+                }
+
+                // Add to the list
+                ytVideos.add(item);
+            }
+
+            if (!unknownIds.isEmpty()) {
+                // Shows the results while their details are requested
+                nextPageToken = nextToken;
+                List<YouTubeVideo> copies = new ArrayList<>(ytVideos.size());
+                for (YouTubeVideo item : ytVideos) {
+                    copies.add(new YouTubeVideo(item));
+                }
+                publishProgress(copies);
+
+                // Finds video list
+                videosList.setId(TextUtils.join(",", unknownIds));
+                VideoListResponse resp = videosList.execute();
+                Map<String, Video> videoResults = new HashMap<>();
+                for (Video videoResult : resp.getItems()) {
+                    videoResults.put(videoResult.getId(), videoResult);
+                }
+
+                for (YouTubeVideo item : ytVideos) {
+                    if (!unknownIds.contains(item.getId())) continue;
 
                     // Video info
-                    Video videoResult = videoResults.get(index);
+                    Video videoResult = videoResults.get(item.getId());
                     if (videoResult != null) {
-                        if (videoResult.getStatistics() != null) {
-                            BigInteger viewsNumber = videoResult.getStatistics().getViewCount();
-                            String viewsFormatted = NumberFormat.getIntegerInstance().format(viewsNumber) + " views";
-                            item.setViewCount(viewsFormatted);
-                        }
-                        if (videoResult.getContentDetails() != null) {
-                            String isoTime = videoResult.getContentDetails().getDuration();
-                            String time = Utils.convertISO8601DurationToNormalTime(isoTime);
-                            item.setDuration(time);
-                        }
+                        setDetails(item, videoResult);
                     } else {
                         item.setDuration("NA");
                     }
+                }
+            }
+        }
 
-                    // Add to the list
-                    ytVideos.add(item);
-                    index++;
+        Log.e(TAG, "LoadInBackground: return " + ytVideos.size());
+        return new SearchCache.Page(
+                SearchCache.buildKey(keywords, currentPageToken, language),
+                ytVideos,
+                nextToken
+        );
+    }
 
+    /**
+     * Reads the videos the user watched or liked before, whose details need no request.
+     *
+     * @param videoIds the IDs of the videos found
+     * @return the known videos with a duration by their ID
+     */
+    private Map<String, YouTubeVideo> readKnownVideos(List<String> videoIds)
+    {
+        Map<String, YouTubeVideo> knownVideos = new HashMap<>();
+        for (YouTubeSqlDb.VIDEOS_TYPE type : YouTubeSqlDb.VIDEOS_TYPE.values()) {
+            YouTubeSqlDb.Videos videos = YouTubeSqlDb.getInstance().videos(type);
+            if (videos == null) continue;
+            try {
+                for (YouTubeVideo video : videos.read(videoIds).values()) {
+                    if (!Utils.empty(video.getDuration())) {
+                        knownVideos.put(video.getId(), video);
+                    }
                 }
+            } catch (SQLiteException e) {
+                Log.e(TAG, "Could not read the known videos: " + e);
             }
-        } catch (IOException e) {
-            Log.e(TAG, "Could not initialize: " + e);
-            e.printStackTrace();
         }
+        return knownVideos;
+    }
 
-        Log.e(TAG, "LoadInBackground: return " + ytVideos.size());
-        return ytVideos;
+    private static void setDetails(YouTubeVideo item, Video videoResult)
+    {
+        if (videoResult.getStatistics() != null) {
+            BigInteger viewsNumber = videoResult.getStatistics().getViewCount();
+            String viewsFormatted = NumberFormat.getIntegerInstance().format(viewsNumber) + " views";
+            item.setViewCount(viewsFormatted);
+        }
+        if (videoResult.getContentDetails() != null) {
+            String isoTime = videoResult.getContentDetails().getDuration();
+            String time = Utils.convertISO8601DurationToNormalTime(isoTime);
+            item.setDuration(time);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,276 @@
+package at.huber.youtubeExtractor;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Extracts the stream urls of many videos at once, e.g. a whole playlist.
+ * <p/>
+ * The videos are fetched in parallel on a small bounded executor. All of them share one
+ * load of the decipher functions per player version and, if the signatures can't be
+ * deciphered in process, one single WebView evaluation for all enciphered signatures
+ * of the batch. The result of every video is delivered on the main thread as soon as
+ * it is available.
+ */
+public class BatchExtractor {
+
+    private final static String LOG_TAG = "BatchExtractor";
+    private final static int POOL_SIZE = 3;
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE,
+            30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "BatchExtractor #" + count.getAndIncrement());
+        }
+    });
+
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    public interface Callback {
+        /**
+         * Called on the main thread once per requested link.
+         *
+         * @param videoId   the id of the video or the link itself if it has a wrong format
+         * @param ytFiles   the extracted files or null if the extraction failed
+         * @param videoMeta the meta data of the video, may be null if the extraction failed
+         */
+        void onExtractionComplete(String videoId, SparseArray<YtFile> ytFiles, VideoMeta videoMeta);
+    }
+
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private boolean includeWebM = true;
+    private boolean useHttp = false;
+    private boolean parseDashManifest = false;
+    private boolean useStreamUrlCache = true;
+
+    private volatile boolean cancelled;
+
+    public BatchExtractor(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Start the extraction of all links.
+     *
+     * @param youtubeLinks the youtube page links or video ids
+     * @param callback     receives the result of every link
+     */
+    public void extractAll(List<String> youtubeLinks, Callback callback) {
+        if (youtubeLinks == null || youtubeLinks.isEmpty())
+            return;
+        Batch batch = new Batch(callback, youtubeLinks.size());
+        for (String link : youtubeLinks) {
+            EXECUTOR.execute(new FetchTask(batch, link));
+        }
+    }
+
+    /**
+     * Stops delivering results. Extractions that already run are not interrupted.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Parse the dash manifest for different dash streams and high quality audio. Default: false
+     */
+    public void setParseDashManifest(boolean parseDashManifest) {
+        this.parseDashManifest = parseDashManifest;
+    }
+
+    /**
+     * Include the webm format files into the result. Default: true
+     */
+    public void setIncludeWebM(boolean includeWebM) {
+        this.includeWebM = includeWebM;
+    }
+
+    /**
+     * Set default protocol of the returned urls to HTTP instead of HTTPS.
+     *
+     * @see YouTubeExtractor#setDefaultHttpProtocol(boolean)
+     */
+    public void setDefaultHttpProtocol(boolean useHttp) {
+        this.useHttp = useHttp;
+    }
+
+    /**
+     * Answer requests from the {@link StreamUrlCache} and store the results there. Default: true
+     */
+    public void setUseStreamUrlCache(boolean useStreamUrlCache) {
+        this.useStreamUrlCache = useStreamUrlCache;
+    }
+
+    private void deliver(final Batch batch, final String videoId, final SparseArray<YtFile> ytFiles,
+                         final VideoMeta videoMeta) {
+        if (cancelled)
+            return;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!cancelled)
+                    batch.callback.onExtractionComplete(videoId, ytFiles, videoMeta);
+            }
+        });
+    }
+
+    /**
+     * Deciphers the signatures of all extractions that were waiting for the WebView with
+     * one evaluation per player and hands them over to be completed.
+     */
+    private void decipherDeferred(Batch batch) {
+        for (Map.Entry<String, List<StreamExtraction>> player : batch.deferred.entrySet()) {
+            List<StreamExtraction> extractions = player.getValue();
+            List<String> encSignatures = new ArrayList<>();
+            for (StreamExtraction extraction : extractions) {
+                encSignatures.addAll(extraction.getEncSignatures());
+            }
+            if (YouTubeExtractor.LOGGING)
+                Log.d(LOG_TAG, "Decipher " + encSignatures.size() + " signatures of "
+                        + extractions.size() + " videos");
+
+            String[] signatures = null;
+            try {
+                signatures = SignatureDecipherer.forPlayer(context, player.getKey()).decipher(context, encSignatures);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+
+            int offset = 0;
+            for (StreamExtraction extraction : extractions) {
+                int count = extraction.getEncSignatures().size();
+                String[] own = null;
+                if (signatures != null) {
+                    own = new String[count];
+                    System.arraycopy(signatures, offset, own, 0, count);
+                }
+                offset += count;
+                EXECUTOR.execute(new CompleteTask(batch, extraction, own));
+            }
+        }
+        batch.deferred.clear();
+    }
+
+    private static final class Batch {
+
+        private final Callback callback;
+        private final AtomicInteger pendingFetches;
+        // Extractions waiting for the WebView, grouped by player js file
+        private final Map<String, List<StreamExtraction>> deferred = new LinkedHashMap<>();
+
+        private Batch(Callback callback, int size) {
+            this.callback = callback;
+            this.pendingFetches = new AtomicInteger(size);
+        }
+
+        private synchronized void defer(StreamExtraction extraction) {
+            List<StreamExtraction> extractions = deferred.get(extraction.getPlayerJsFileName());
+            if (extractions == null) {
+                extractions = new ArrayList<>();
+                deferred.put(extraction.getPlayerJsFileName(), extractions);
+            }
+            extractions.add(extraction);
+        }
+    }
+
+    private final class FetchTask implements Runnable {
+
+        private final Batch batch;
+        private final String link;
+
+        private FetchTask(Batch batch, String link) {
+            this.batch = batch;
+            this.link = link;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!cancelled)
+                    fetch();
+            } finally {
+                if (batch.pendingFetches.decrementAndGet() == 0) {
+                    synchronized (batch) {
+                        decipherDeferred(batch);
+                    }
+                }
+            }
+        }
+
+        private void fetch() {
+            String videoId = StreamExtraction.parseVideoId(link);
+            if (videoId == null) {
+                Log.e(LOG_TAG, "Wrong YouTube link format");
+                deliver(batch, link, null, null);
+                return;
+            }
+
+            StreamExtraction extraction = new StreamExtraction(context, videoId, parseDashManifest,
+                    includeWebM, useHttp);
+            extraction.setDeferWebView(true);
+            SparseArray<YtFile> ytFiles = null;
+            try {
+                ytFiles = SingleFlight.run(extraction, useStreamUrlCache);
+                if (extraction.isDeferred()) {
+                    batch.defer(extraction);
+                    return;
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            deliver(batch, videoId, ytFiles, extraction.getVideoMeta());
+        }
+    }
+
+    private final class CompleteTask implements Runnable {
+
+        private final Batch batch;
+        private final StreamExtraction extraction;
+        private final String[] signatures;
+
+        private CompleteTask(Batch batch, StreamExtraction extraction, String[] signatures) {
+            this.batch = batch;
+            this.extraction = extraction;
+            this.signatures = signatures;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled)
+                return;
+            SparseArray<YtFile> ytFiles = null;
+            try {
+                ytFiles = extraction.completeDeferred(signatures, useStreamUrlCache);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            deliver(batch, extraction.getVideoId(), ytFiles, extraction.getVideoMeta());
+        }
+    }
+}
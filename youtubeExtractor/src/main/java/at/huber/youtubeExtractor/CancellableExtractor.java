@@ -0,0 +1,126 @@
+package at.huber.youtubeExtractor;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Extracts the stream urls of single videos like {@link YouTubeExtractor}, but every
+ * extraction is returned as an {@link ExtractionFuture} which can be cancelled and which
+ * gives up once its deadline has passed.
+ * <p/>
+ * Meant for playback, where the user may skip to another video before the urls of the
+ * current one are known: the old extraction is cancelled, its connections are closed and
+ * it no longer takes a thread away from the new one.
+ */
+public class CancellableExtractor {
+
+    private final static String LOG_TAG = "CancellableExtractor";
+    private final static int POOL_SIZE = 2;
+    private final static long DEFAULT_DEADLINE_MS = 20000;
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE,
+            30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "CancellableExtractor #" + count.getAndIncrement());
+        }
+    });
+
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    public interface Callback {
+        /**
+         * Called on the main thread unless the extraction has been cancelled.
+         *
+         * @param videoId   the id of the video or the link itself if it has a wrong format
+         * @param ytFiles   the extracted files or null if the extraction failed or its
+         *                  deadline has passed
+         * @param videoMeta the meta data of the video, may be null if the extraction failed
+         */
+        void onExtractionComplete(String videoId, SparseArray<YtFile> ytFiles, VideoMeta videoMeta);
+    }
+
+    private final Context context;
+    private boolean includeWebM = true;
+    private boolean useHttp = false;
+    private boolean parseDashManifest = false;
+    private boolean useStreamUrlCache = true;
+    private long deadlineMs = DEFAULT_DEADLINE_MS;
+
+    public CancellableExtractor(Context context) {
+        this.context = context != null ? context.getApplicationContext() : null;
+    }
+
+    /**
+     * Starts the extraction of one video.
+     *
+     * @param youtubeLink the youtube page link or video id
+     * @param callback    gets the result, may be null if the future is used instead
+     * @return the future of the extraction
+     */
+    public ExtractionFuture extract(String youtubeLink, Callback callback) {
+        String videoId = StreamExtraction.parseVideoId(youtubeLink);
+        if (videoId == null) {
+            Log.e(LOG_TAG, "Wrong YouTube link format");
+            ExtractionFuture future = new ExtractionFuture(youtubeLink, null, false, callback);
+            future.run();
+            return future;
+        }
+
+        StreamExtraction extraction = new StreamExtraction(context, videoId, parseDashManifest,
+                includeWebM, useHttp);
+        ExtractionFuture future = new ExtractionFuture(videoId, extraction, useStreamUrlCache, callback);
+        future.startDeadline(deadlineMs);
+        EXECUTOR.execute(future);
+        return future;
+    }
+
+    /**
+     * Parse the dash manifest for different dash streams and high quality audio. Default: false
+     */
+    public void setParseDashManifest(boolean parseDashManifest) {
+        this.parseDashManifest = parseDashManifest;
+    }
+
+    /**
+     * Include the webm format files into the result. Default: true
+     */
+    public void setIncludeWebM(boolean includeWebM) {
+        this.includeWebM = includeWebM;
+    }
+
+    /**
+     * Set default protocol of the returned urls to HTTP instead of HTTPS.
+     * HTTP may be blocked in some regions so HTTPS is the default value.
+     */
+    public void setDefaultHttpProtocol(boolean useHttp) {
+        this.useHttp = useHttp;
+    }
+
+    /**
+     * Answer the request from the {@link StreamUrlCache} if the urls for a video have been
+     * resolved before and did not expire yet. Default: true
+     */
+    public void setUseStreamUrlCache(boolean useStreamUrlCache) {
+        this.useStreamUrlCache = useStreamUrlCache;
+    }
+
+    /**
+     * Set the time an extraction may take as a whole, including the time it waits for a
+     * thread. Default: 20 seconds
+     */
+    public void setDeadline(long deadlineMs) {
+        this.deadlineMs = deadlineMs;
+    }
+}
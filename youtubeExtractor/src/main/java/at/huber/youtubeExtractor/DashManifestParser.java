@@ -0,0 +1,83 @@
+package at.huber.youtubeExtractor;
+
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pull parser for the dash manifest. Every stream is reported as soon as the
+ * <code>BaseURL</code> of its <code>Representation</code> has been read, the manifest is
+ * never held in memory as a whole.
+ */
+final class DashManifestParser {
+
+    private static final String TAG_REPRESENTATION = "Representation";
+    private static final String TAG_BASE_URL = "BaseURL";
+    private static final String ATTR_ID = "id";
+    private static final String NAMESPACE_YT = "http://youtube.com/yt/2012/10/10";
+    // Only complete files have a content length, segmented streams are of no use
+    private static final String ATTR_CONTENT_LENGTH = "contentLength";
+
+    private static final Pattern patItag = Pattern.compile("(?:[?&]itag=|/itag/)([0-9]+)");
+
+    interface Listener {
+        /**
+         * @param itag the itag of the stream
+         * @param url  the url of the stream with xml entities already resolved
+         */
+        void onStream(int itag, String url);
+    }
+
+    private DashManifestParser() {
+    }
+
+    static void parse(InputStream in, Listener listener) throws IOException {
+        try {
+            XmlPullParser parser = Xml.newPullParser();
+            // The content length is in the yt namespace
+            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+            parser.setInput(in, null);
+            int representationItag = -1;
+            int event;
+            while ((event = parser.next()) != XmlPullParser.END_DOCUMENT) {
+                if (event == XmlPullParser.START_TAG) {
+                    String name = parser.getName();
+                    if (TAG_REPRESENTATION.equals(name)) {
+                        representationItag = parseItag(parser.getAttributeValue(null, ATTR_ID));
+                    } else if (TAG_BASE_URL.equals(name)
+                            && parser.getAttributeValue(NAMESPACE_YT, ATTR_CONTENT_LENGTH) != null) {
+                        String url = parser.nextText().trim();
+                        int itag = representationItag;
+                        if (itag < 0) {
+                            Matcher mat = patItag.matcher(url);
+                            if (mat.find())
+                                itag = Integer.parseInt(mat.group(1));
+                        }
+                        if (itag >= 0 && url.length() > 0)
+                            listener.onStream(itag, url);
+                    }
+                } else if (event == XmlPullParser.END_TAG && TAG_REPRESENTATION.equals(parser.getName())) {
+                    representationItag = -1;
+                }
+            }
+        } catch (XmlPullParserException e) {
+            throw new IOException("Malformed dash manifest: " + e.getMessage());
+        }
+    }
+
+    private static int parseItag(String id) {
+        if (id == null)
+            return -1;
+        try {
+            return Integer.parseInt(id);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package at.huber.youtubeExtractor;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * On disk store of the decipher functions of the last few player versions, keyed by the
+ * name of the player js file.
+ * <p/>
+ * The store is read once per process and kept in memory. Writes go to a temporary file
+ * which is renamed over the old store, so a reader never sees a half written file.
+ * <p/>
+ * The store also keeps the {@link SignatureDecipherer} of each player, so the decipher
+ * functions are only compiled once. Without a context there is no file, the functions are
+ * just kept in memory.
+ */
+final class DecipherFunctionStore {
+
+    private final static String LOG_TAG = "DecipherFunctionStore";
+    private final static String STORE_FILE_NAME = "decipher_js_store";
+    // Replaced by this store, only the latest player version fit in there.
+    private final static String LEGACY_CACHE_FILE_NAME = "decipher_js_funct";
+    private final static int FILE_VERSION = 1;
+
+    private final static int MAX_ENTRIES = 4;
+    private final static int MAX_PLAYERS = 4;
+    // Players that were not used for 2 weeks are gone for good
+    private final static long MAX_UNUSED_MS = 1209600000;
+    // How stale the last use on disk may get before a read rewrites the store
+    private final static long LAST_USED_PERSIST_MS = 86400000;
+
+    private static DecipherFunctionStore instance;
+    private static DecipherFunctionStore memoryInstance;
+
+    private final File cacheDir;
+    private final File storeFile;
+    private Map<String, Entry> entries;
+
+    private final Map<String, SignatureDecipherer> decipherers = new LinkedHashMap<String, SignatureDecipherer>(MAX_PLAYERS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SignatureDecipherer> eldest) {
+            return size() > MAX_PLAYERS;
+        }
+    };
+
+    private DecipherFunctionStore(File cacheDir) {
+        this.cacheDir = cacheDir;
+        if (cacheDir != null) {
+            this.storeFile = new File(cacheDir, STORE_FILE_NAME);
+            new File(cacheDir, LEGACY_CACHE_FILE_NAME).delete();
+        } else {
+            this.storeFile = null;
+        }
+    }
+
+    /**
+     * @param context may be null, the functions are not written to disk then
+     * @return the store in the cache dir of the context, a context with another cache dir
+     * gets a store of its own
+     */
+    static synchronized DecipherFunctionStore getInstance(Context context) {
+        if (context == null) {
+            if (memoryInstance == null)
+                memoryInstance = new DecipherFunctionStore(null);
+            return memoryInstance;
+        }
+        File cacheDir = context.getCacheDir();
+        if (instance == null || !instance.cacheDir.equals(cacheDir)) {
+            instance = new DecipherFunctionStore(cacheDir);
+        }
+        return instance;
+    }
+
+    /**
+     * @return the decipherer of the given player, the same one for all callers
+     */
+    SignatureDecipherer getDecipherer(String jsFileName) {
+        synchronized (decipherers) {
+            SignatureDecipherer decipherer = decipherers.get(jsFileName);
+            if (decipherer == null) {
+                decipherer = new SignatureDecipherer(this, jsFileName);
+                decipherers.put(jsFileName, decipherer);
+            }
+            return decipherer;
+        }
+    }
+
+    /**
+     * @return the functions of the given player or null if they are not stored
+     */
+    synchronized Entry get(String jsFileName) {
+        loadIfNeeded();
+        Entry entry = entries.get(jsFileName);
+        if (entry != null) {
+            entry.lastUsed = System.currentTimeMillis();
+            // Rewritten at most once a day, so the eviction sees the use after a restart
+            if (entry.lastUsed - entry.storedLastUsed > LAST_USED_PERSIST_MS)
+                write();
+        }
+        return entry;
+    }
+
+    synchronized void put(String jsFileName, String functionName, String functions) {
+        if (jsFileName == null || functionName == null || functions == null)
+            return;
+        loadIfNeeded();
+        entries.put(jsFileName, new Entry(jsFileName, functionName, functions, System.currentTimeMillis()));
+        evict();
+        write();
+    }
+
+    private void loadIfNeeded() {
+        if (entries != null)
+            return;
+        entries = new LinkedHashMap<>();
+        if (storeFile == null || !storeFile.exists())
+            return;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(storeFile)));
+            if (in.readInt() != FILE_VERSION)
+                return;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(readString(in), readString(in), readString(in), in.readLong());
+                entries.put(entry.jsFileName, entry);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Could not read the decipher function store", e);
+            entries.clear();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        evict();
+    }
+
+    private void evict() {
+        long now = System.currentTimeMillis();
+        List<Entry> sorted = new ArrayList<>(entries.values());
+        Collections.sort(sorted, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry lhs, Entry rhs) {
+                return lhs.lastUsed > rhs.lastUsed ? -1 : (lhs.lastUsed < rhs.lastUsed ? 1 : 0);
+            }
+        });
+        for (int i = 0; i < sorted.size(); i++) {
+            Entry entry = sorted.get(i);
+            if (i >= MAX_ENTRIES || now - entry.lastUsed > MAX_UNUSED_MS) {
+                entries.remove(entry.jsFileName);
+            }
+        }
+    }
+
+    private void write() {
+        if (storeFile == null)
+            return;
+        File tmpFile = new File(storeFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(FILE_VERSION);
+            out.writeInt(entries.size());
+            for (Entry entry : entries.values()) {
+                writeString(out, entry.jsFileName);
+                writeString(out, entry.functionName);
+                writeString(out, entry.functions);
+                out.writeLong(entry.lastUsed);
+            }
+            out.close();
+            out = null;
+            if (tmpFile.renameTo(storeFile)) {
+                for (Entry entry : entries.values()) {
+                    entry.storedLastUsed = entry.lastUsed;
+                }
+            } else {
+                Log.e(LOG_TAG, "Could not replace the decipher function store");
+                tmpFile.delete();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            tmpFile.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    // The decipher functions may exceed the 64k limit of writeUTF
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    static final class Entry {
+
+        private final String jsFileName;
+        private final String functionName;
+        private final String functions;
+        private long lastUsed;
+        // The last use as it is on disk
+        private long storedLastUsed;
+
+        private Entry(String jsFileName, String functionName, String functions, long lastUsed) {
+            this.jsFileName = jsFileName;
+            this.functionName = functionName;
+            this.functions = functions;
+            this.lastUsed = lastUsed;
+            this.storedLastUsed = lastUsed;
+        }
+
+        String getFunctionName() {
+            return functionName;
+        }
+
+        String getFunctions() {
+            return functions;
+        }
+    }
+}
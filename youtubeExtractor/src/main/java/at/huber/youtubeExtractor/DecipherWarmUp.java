@@ -0,0 +1,102 @@
+package at.huber.youtubeExtractor;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Gets the decipher functions of the current player ready before the first enciphered video
+ * is requested, so the download of the player js and the extraction of its functions are
+ * not on the critical path of the first playback.
+ * <p/>
+ * The warm-up looks up the current player on the watch page of any video. If its functions
+ * are in the {@link DecipherFunctionStore} they are just loaded, otherwise the player js
+ * is downloaded and the store is refreshed with them.
+ */
+public final class DecipherWarmUp {
+
+    private final static String LOG_TAG = "DecipherWarmUp";
+    // Any video does, they all reference the current player
+    private final static String DEFAULT_VIDEO_ID = "jNQXAC9IVRw";
+    // The player changes every few days at most
+    private final static long MIN_INTERVAL_MS = 6 * 60 * 60 * 1000;
+
+    private static final AtomicBoolean running = new AtomicBoolean();
+    private static volatile long lastWarmUp;
+
+    private DecipherWarmUp() {
+    }
+
+    /**
+     * Starts the warm-up on a background thread of low priority, unless one is running or
+     * finished recently.
+     *
+     * @return false if the warm-up was skipped
+     */
+    public static boolean start(Context context) {
+        return start(context, DEFAULT_VIDEO_ID);
+    }
+
+    /**
+     * @param videoId the video whose watch page is used to find the current player
+     * @see #start(Context)
+     */
+    public static boolean start(Context context, final String videoId) {
+        if (System.currentTimeMillis() - lastWarmUp < MIN_INTERVAL_MS)
+            return false;
+        if (!running.compareAndSet(false, true))
+            return false;
+
+        final Context appContext = context.getApplicationContext();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                try {
+                    if (warmUp(appContext, videoId))
+                        lastWarmUp = System.currentTimeMillis();
+                } catch (IOException e) {
+                    if (YouTubeExtractor.LOGGING)
+                        Log.d(LOG_TAG, "Warm-up failed: " + e.getMessage());
+                } finally {
+                    running.set(false);
+                }
+            }
+        }, "DecipherWarmUp").start();
+        return true;
+    }
+
+    /**
+     * Runs the warm-up on the calling thread.
+     *
+     * @return true if the decipher functions of the current player are ready
+     */
+    static boolean warmUp(Context context, String videoId) throws IOException {
+        String jsFileName = null;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(
+                    HttpTransport.get().open("https://www.youtube.com/watch?v=" + videoId)));
+            String line;
+            while (jsFileName == null && (line = reader.readLine()) != null) {
+                jsFileName = StreamExtraction.findPlayerJsFileName(line);
+            }
+        } finally {
+            if (reader != null)
+                reader.close();
+        }
+        if (jsFileName == null) {
+            Log.e(LOG_TAG, "No player js found on the watch page of " + videoId);
+            return false;
+        }
+
+        if (YouTubeExtractor.LOGGING)
+            Log.d(LOG_TAG, "Warming up " + jsFileName);
+        return SignatureDecipherer.forPlayer(context, jsFileName).load();
+    }
+}
@@ -0,0 +1,116 @@
+package at.huber.youtubeExtractor;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseArray;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A single extraction started by {@link CancellableExtractor}.
+ * <p/>
+ * {@link #cancel(boolean)} aborts the requests of the extraction right away and the callback
+ * is never called. If the extraction is not done by its deadline it is aborted the same way,
+ * but the callback is told about the failure.
+ */
+public final class ExtractionFuture extends FutureTask<SparseArray<YtFile>> {
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final String videoId;
+    private final StreamExtraction extraction;
+    private final CancellableExtractor.Callback callback;
+    private volatile boolean abandoned;
+    private volatile boolean timedOut;
+
+    private final Runnable deadline = new Runnable() {
+        @Override
+        public void run() {
+            timedOut = true;
+            abort();
+        }
+    };
+
+    ExtractionFuture(final String videoId, final StreamExtraction extraction,
+                     final boolean useStreamUrlCache, CancellableExtractor.Callback callback) {
+        super(new Callable<SparseArray<YtFile>>() {
+            @Override
+            public SparseArray<YtFile> call() throws Exception {
+                return extraction != null ? SingleFlight.run(extraction, useStreamUrlCache) : null;
+            }
+        });
+        this.videoId = videoId;
+        this.extraction = extraction;
+        this.callback = callback;
+    }
+
+    void startDeadline(long deadlineMs) {
+        mainHandler.postDelayed(deadline, deadlineMs);
+    }
+
+    /**
+     * @return the id of the video or the link itself if it has a wrong format
+     */
+    public String getVideoId() {
+        return videoId;
+    }
+
+    /**
+     * @return the meta data of the video, null until it has been downloaded
+     */
+    public VideoMeta getVideoMeta() {
+        return extraction != null ? extraction.getVideoMeta() : null;
+    }
+
+    /**
+     * @return true if the extraction was aborted because it took longer than its deadline
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Aborts the extraction, the callback won't be called anymore. If others are waiting
+     * for the same extraction it goes on for them.
+     *
+     * @param mayInterruptIfRunning true to interrupt the thread while it waits for the WebView
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        abandoned = true;
+        mainHandler.removeCallbacks(deadline);
+        boolean stopped = extraction == null || SingleFlight.cancel(extraction);
+        return super.cancel(mayInterruptIfRunning && stopped);
+    }
+
+    private void abort() {
+        boolean stopped = extraction == null || SingleFlight.cancel(extraction);
+        super.cancel(stopped);
+    }
+
+    @Override
+    protected void done() {
+        mainHandler.removeCallbacks(deadline);
+        if (abandoned || callback == null)
+            return;
+        SparseArray<YtFile> result = null;
+        try {
+            result = get();
+        } catch (CancellationException | InterruptedException e) {
+            // Timed out
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        }
+        final SparseArray<YtFile> ytFiles = result;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!abandoned)
+                    callback.onExtractionComplete(videoId, ytFiles, getVideoMeta());
+            }
+        });
+    }
+}
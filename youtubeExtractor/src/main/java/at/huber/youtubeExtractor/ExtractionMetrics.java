@@ -0,0 +1,177 @@
+package at.huber.youtubeExtractor;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-process registry of how long the phases of the extractions took and how often
+ * notable things like cache hits or WebView fallbacks happened.
+ * <p/>
+ * Timings go into histograms with power of two millisecond buckets, so recording is cheap
+ * and the registry stays small no matter how many extractions ran. {@link #dump()} renders
+ * everything as text for a debug screen, {@link #writeTo(File)} into a file.
+ */
+public final class ExtractionMetrics {
+
+    public static final String PHASE_TOTAL = "total";
+    public static final String PHASE_VIDEO_INFO = "get_video_info";
+    public static final String PHASE_WATCH_PAGE = "watch_page";
+    public static final String PHASE_STREAM_PARSING = "stream_parsing";
+    public static final String PHASE_PLAYER_JS = "player_js";
+    public static final String PHASE_DECIPHER_FUNCTIONS = "decipher_functions";
+    public static final String PHASE_DECIPHER = "decipher";
+    public static final String PHASE_WEBVIEW_DECIPHER = "webview_decipher";
+    public static final String PHASE_DASH = "dash_manifest";
+    // Time an extraction waited for the dash manifest fetched in the background
+    public static final String PHASE_DASH_WAIT = "dash_manifest_wait";
+
+    public static final String COUNTER_URL_CACHE_HIT = "url_cache_hit";
+    public static final String COUNTER_URL_CACHE_MISS = "url_cache_miss";
+    public static final String COUNTER_DECIPHER_STORE_HIT = "decipher_store_hit";
+    public static final String COUNTER_WEBVIEW_FALLBACK = "webview_fallback";
+    public static final String COUNTER_DASH_RETRY = "dash_retry";
+    public static final String COUNTER_DASH_TIMEOUT = "dash_timeout";
+    public static final String COUNTER_FAILURE = "failure";
+
+    // Bucket i counts durations below 2^i ms, the last one everything above
+    private static final int BUCKETS = 17;
+
+    private static final ExtractionMetrics instance = new ExtractionMetrics();
+
+    private final Map<String, Histogram> histograms = new TreeMap<>();
+    private final Map<String, long[]> counters = new TreeMap<>();
+
+    private ExtractionMetrics() {
+    }
+
+    public static ExtractionMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Records the time since <code>startNanos</code>, taken from {@link System#nanoTime()}.
+     */
+    public void recordSince(String phase, long startNanos) {
+        record(phase, (System.nanoTime() - startNanos) / 1000000);
+    }
+
+    public synchronized void record(String phase, long durationMs) {
+        Histogram histogram = histograms.get(phase);
+        if (histogram == null) {
+            histogram = new Histogram();
+            histograms.put(phase, histogram);
+        }
+        histogram.add(durationMs);
+    }
+
+    public synchronized void increment(String counter) {
+        long[] count = counters.get(counter);
+        if (count == null) {
+            count = new long[1];
+            counters.put(counter, count);
+        }
+        count[0]++;
+    }
+
+    public synchronized long getCount(String counter) {
+        long[] count = counters.get(counter);
+        return count == null ? 0 : count[0];
+    }
+
+    /**
+     * @return the number of recorded timings of the phase
+     */
+    public synchronized long getTimingCount(String phase) {
+        Histogram histogram = histograms.get(phase);
+        return histogram == null ? 0 : histogram.count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the upper bound in ms of the bucket holding the percentile, -1 if nothing
+     * was recorded for the phase
+     */
+    public synchronized long getPercentile(String phase, int percentile) {
+        Histogram histogram = histograms.get(phase);
+        return histogram == null ? -1 : histogram.percentile(percentile);
+    }
+
+    public synchronized void reset() {
+        histograms.clear();
+        counters.clear();
+    }
+
+    /**
+     * @return all timings and counters in a human readable form
+     */
+    public synchronized String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("phase: count, mean, p50, p90, p99, max (ms)\n");
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            sb.append(entry.getKey()).append(": ")
+                    .append(histogram.count).append(", ")
+                    .append(histogram.sum / histogram.count).append(", ")
+                    .append(histogram.percentile(50)).append(", ")
+                    .append(histogram.percentile(90)).append(", ")
+                    .append(histogram.percentile(99)).append(", ")
+                    .append(histogram.max).append('\n');
+            sb.append("  buckets:");
+            for (int i = 0; i < BUCKETS; i++) {
+                if (histogram.buckets[i] > 0)
+                    sb.append(" <").append(Histogram.upperBound(i)).append('=').append(histogram.buckets[i]);
+            }
+            sb.append('\n');
+        }
+        sb.append("counters\n");
+        for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+            sb.append(entry.getKey()).append(": ").append(entry.getValue()[0]).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public void writeTo(File file) throws IOException {
+        Writer writer = new FileWriter(file);
+        try {
+            writer.write(dump());
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static final class Histogram {
+
+        private final long[] buckets = new long[BUCKETS];
+        private long count;
+        private long sum;
+        private long max;
+
+        private void add(long durationMs) {
+            durationMs = Math.max(0, durationMs);
+            int bucket = 64 - Long.numberOfLeadingZeros(durationMs);
+            buckets[Math.min(bucket, BUCKETS - 1)]++;
+            count++;
+            sum += durationMs;
+            max = Math.max(max, durationMs);
+        }
+
+        private long percentile(int percentile) {
+            long threshold = (count * percentile + 99) / 100;
+            long seen = 0;
+            for (int i = 0; i < BUCKETS - 1; i++) {
+                seen += buckets[i];
+                if (seen >= threshold)
+                    return Math.min(upperBound(i), max);
+            }
+            return max;
+        }
+
+        private static long upperBound(int bucket) {
+            return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+        }
+    }
+}
@@ -10,66 +10,141 @@ public class Format {
         MP3, AAC, VORBIS, OPUS, NONE
     }
 
-    private int itag;
-    private String ext;
-    private int height;
-    private int fps;
-    private VCodec vCodec;
-    private ACodec aCodec;
-    private int audioBitrate;
-    private boolean isDashContainer;
-    private boolean isHlsContent;
+    // Capabilities, see getCapabilities()
+    public static final int HAS_AUDIO = 1;
+    public static final int HAS_VIDEO = 1 << 1;
+    public static final int AUDIO_ONLY = 1 << 2;
+    public static final int DASH = 1 << 3;
+    public static final int HLS = 1 << 4;
+    public static final int WEBM = 1 << 5;
+    public static final int HIGH_FPS = 1 << 6;
+    // Audio bitrate of at least 128 kbit/s
+    public static final int AUDIO_HQ = 1 << 7;
+
+    public static final int AUDIO_AAC = 1 << 8;
+    public static final int AUDIO_OPUS = 1 << 9;
+    public static final int AUDIO_VORBIS = 1 << 10;
+    public static final int AUDIO_MP3 = 1 << 11;
+
+    public static final int VIDEO_H264 = 1 << 16;
+    public static final int VIDEO_VP9 = 1 << 17;
+    public static final int VIDEO_VP8 = 1 << 18;
+    public static final int VIDEO_MPEG4 = 1 << 19;
+    public static final int VIDEO_H263 = 1 << 20;
+
+    private final int itag;
+    private final String ext;
+    private final int height;
+    private final int fps;
+    private final VCodec vCodec;
+    private final ACodec aCodec;
+    private final int audioBitrate;
+    private final boolean isDashContainer;
+    private final boolean isHlsContent;
+    private final int capabilities;
 
     Format(int itag, String ext, int height, VCodec vCodec, ACodec aCodec, boolean isDashContainer) {
-        this.itag = itag;
-        this.ext = ext;
-        this.height = height;
-        this.fps = 30;
-        this.audioBitrate = -1;
-        this.isDashContainer = isDashContainer;
-        this.isHlsContent = false;
+        this(itag, ext, height, vCodec, 30, aCodec, -1, isDashContainer, false);
     }
 
     Format(int itag, String ext, VCodec vCodec, ACodec aCodec, int audioBitrate, boolean isDashContainer) {
-        this.itag = itag;
-        this.ext = ext;
-        this.height = -1;
-        this.fps = 30;
-        this.audioBitrate = audioBitrate;
-        this.isDashContainer = isDashContainer;
-        this.isHlsContent = false;
+        this(itag, ext, -1, vCodec, 30, aCodec, audioBitrate, isDashContainer, false);
     }
 
     Format(int itag, String ext, int height, VCodec vCodec, ACodec aCodec, int audioBitrate,
            boolean isDashContainer) {
-        this.itag = itag;
-        this.ext = ext;
-        this.height = height;
-        this.fps = 30;
-        this.audioBitrate = audioBitrate;
-        this.isDashContainer = isDashContainer;
-        this.isHlsContent = false;
+        this(itag, ext, height, vCodec, 30, aCodec, audioBitrate, isDashContainer, false);
     }
 
     Format(int itag, String ext, int height, VCodec vCodec, ACodec aCodec, int audioBitrate,
            boolean isDashContainer, boolean isHlsContent) {
-        this.itag = itag;
-        this.ext = ext;
-        this.height = height;
-        this.fps = 30;
-        this.audioBitrate = audioBitrate;
-        this.isDashContainer = isDashContainer;
-        this.isHlsContent = isHlsContent;
+        this(itag, ext, height, vCodec, 30, aCodec, audioBitrate, isDashContainer, isHlsContent);
     }
 
     Format(int itag, String ext, int height, VCodec vCodec, int fps, ACodec aCodec, boolean isDashContainer) {
+        this(itag, ext, height, vCodec, fps, aCodec, -1, isDashContainer, false);
+    }
+
+    private Format(int itag, String ext, int height, VCodec vCodec, int fps, ACodec aCodec,
+                   int audioBitrate, boolean isDashContainer, boolean isHlsContent) {
         this.itag = itag;
         this.ext = ext;
         this.height = height;
-        this.audioBitrate = -1;
+        this.vCodec = vCodec;
         this.fps = fps;
+        this.aCodec = aCodec;
+        this.audioBitrate = audioBitrate;
         this.isDashContainer = isDashContainer;
-        this.isHlsContent = false;
+        this.isHlsContent = isHlsContent;
+        this.capabilities = computeCapabilities();
+    }
+
+    private int computeCapabilities() {
+        int caps = 0;
+        if (aCodec != ACodec.NONE)
+            caps |= HAS_AUDIO;
+        if (vCodec != VCodec.NONE)
+            caps |= HAS_VIDEO;
+        else if (aCodec != ACodec.NONE)
+            caps |= AUDIO_ONLY;
+        if (isDashContainer)
+            caps |= DASH;
+        if (isHlsContent)
+            caps |= HLS;
+        if ("webm".equals(ext))
+            caps |= WEBM;
+        if (fps > 30)
+            caps |= HIGH_FPS;
+        if (audioBitrate >= 128)
+            caps |= AUDIO_HQ;
+
+        switch (aCodec) {
+            case AAC:
+                caps |= AUDIO_AAC;
+                break;
+            case OPUS:
+                caps |= AUDIO_OPUS;
+                break;
+            case VORBIS:
+                caps |= AUDIO_VORBIS;
+                break;
+            case MP3:
+                caps |= AUDIO_MP3;
+                break;
+        }
+        switch (vCodec) {
+            case H264:
+                caps |= VIDEO_H264;
+                break;
+            case VP9:
+                caps |= VIDEO_VP9;
+                break;
+            case VP8:
+                caps |= VIDEO_VP8;
+                break;
+            case MPEG4:
+                caps |= VIDEO_MPEG4;
+                break;
+            case H263:
+                caps |= VIDEO_H263;
+                break;
+        }
+        return caps;
+    }
+
+    /**
+     * The capability bits of this format like {@link #AUDIO_ONLY} or {@link #AUDIO_AAC},
+     * computed once when the format table is built.
+     */
+    public int getCapabilities() {
+        return capabilities;
+    }
+
+    /**
+     * @return true if this format has all of the given capability bits
+     */
+    public boolean matches(int capabilityMask) {
+        return (capabilities & capabilityMask) == capabilityMask;
     }
 
     /**
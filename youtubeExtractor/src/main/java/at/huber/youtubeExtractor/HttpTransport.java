@@ -0,0 +1,81 @@
+package at.huber.youtubeExtractor;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The HTTP layer of the extractor. Every request for the video info, the watch page, the
+ * player js and the manifests goes through the installed transport, so it can be replaced,
+ * e.g. by one on top of another HTTP client or one that replays recorded responses in tests.
+ */
+public abstract class HttpTransport {
+
+    /**
+     * Gets told about every finished request, e.g. to find out where an extraction spends
+     * its time. Called on the thread which made the request.
+     */
+    public interface RequestListener {
+        /**
+         * @param url          the requested url
+         * @param responseCode the HTTP status code or -1 if no response was received
+         * @param responseMs   the time until the response headers were received
+         * @param totalMs      the time until the response body was closed
+         * @param bytes        the number of body bytes read by the extractor
+         */
+        void onRequestFinished(String url, int responseCode, long responseMs, long totalMs, long bytes);
+    }
+
+    private static volatile HttpTransport transport = new UrlConnectionTransport();
+    private static volatile RequestListener requestListener;
+
+    public static HttpTransport get() {
+        return transport;
+    }
+
+    /**
+     * @param newTransport the transport to use from now on, <code>null</code> restores the default
+     */
+    public static void set(HttpTransport newTransport) {
+        transport = newTransport != null ? newTransport : new UrlConnectionTransport();
+    }
+
+    public static void setRequestListener(RequestListener listener) {
+        requestListener = listener;
+    }
+
+    /**
+     * To be called by implementations once a request is finished.
+     */
+    protected static void notifyRequestFinished(String url, int responseCode, long responseMs,
+                                                long totalMs, long bytes) {
+        RequestListener listener = requestListener;
+        if (listener != null)
+            listener.onRequestFinished(url, responseCode, responseMs, totalMs, bytes);
+    }
+
+    /**
+     * Sends a GET request.
+     *
+     * @param readTimeoutMs the read timeout in milliseconds, 0 for the default
+     * @return the response body, the caller has to close it
+     * @throws IOException if the request failed or the response was not successful
+     */
+    public abstract InputStream open(String url, int readTimeoutMs) throws IOException;
+
+    final InputStream open(String url) throws IOException {
+        return open(url, 0);
+    }
+
+    /**
+     * Aborts a response body returned by {@link #open(String, int)}. May be called from any
+     * thread while another one is reading, the read then fails with an IOException. The
+     * default implementation just closes the stream.
+     */
+    public void abort(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // Nothing left to free
+        }
+    }
+}
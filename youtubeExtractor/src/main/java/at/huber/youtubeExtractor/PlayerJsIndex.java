@@ -0,0 +1,276 @@
+package at.huber.youtubeExtractor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index of the named function and object definitions of a player js file, built in a
+ * single pass over the file.
+ * <p/>
+ * Three kinds of definitions are found, by the first occurrence of their name:
+ * <ul>
+ * <li><code>function name(a){...}</code></li>
+ * <li><code>name=function(a){...}</code> after <code>var </code>, a comma or a semicolon</li>
+ * <li><code>var name={...}</code></li>
+ * </ul>
+ * The end of every definition is found by matching its braces while scanning, so looking
+ * one up afterwards costs a map access instead of another search through the file. Braces
+ * in strings, regular expression literals and comments are ignored.
+ */
+final class PlayerJsIndex {
+
+    // The keywords which may be followed by an expression
+    private static final String[] KEYWORDS = {"return", "typeof", "case", "in", "of", "delete",
+            "void", "throw", "new", "instanceof", "do", "else", "yield"};
+
+    private final String js;
+    private final Map<String, Definition> functions = new HashMap<>();
+    private final Map<String, Definition> functionVariables = new HashMap<>();
+    private final Map<String, Definition> objects = new HashMap<>();
+
+    private PlayerJsIndex(String js) {
+        this.js = js;
+    }
+
+    static PlayerJsIndex build(String js) {
+        PlayerJsIndex index = new PlayerJsIndex(js);
+        index.scan();
+        return index;
+    }
+
+    /**
+     * @return <code>function name(...){...};</code> or null if there is no such function
+     */
+    String getFunction(String name) {
+        return render(functions.get(name), "function ");
+    }
+
+    /**
+     * @return <code>var name=function(...){...};</code> or null if there is no such function
+     */
+    String getFunctionVariable(String name) {
+        return render(functionVariables.get(name), "var ");
+    }
+
+    /**
+     * @return <code>var name={...};</code> or null if there is no such object
+     */
+    String getObject(String name) {
+        return render(objects.get(name), "var ");
+    }
+
+    private String render(Definition definition, String prefix) {
+        if (definition == null || definition.end < 0)
+            return null;
+        return new StringBuilder(prefix.length() + definition.end - definition.nameStart + 1)
+                .append(prefix).append(js, definition.nameStart, definition.end).append(';')
+                .toString();
+    }
+
+    private void scan() {
+        int length = js.length();
+        // The definition each open brace belongs to, null for other braces
+        Definition[] stack = new Definition[64];
+        int depth = 0;
+        // A definition whose body starts with the next brace
+        Definition pending = null;
+        // The last character which is no whitespace, to tell a division from a regex
+        char previous = ';';
+
+        int i = 0;
+        while (i < length) {
+            char c = js.charAt(i);
+            if (isIdentifierPart(c)) {
+                int end = i + 1;
+                while (end < length && isIdentifierPart(js.charAt(end))) {
+                    end++;
+                }
+                Definition definition = readDefinition(i, end);
+                if (definition != null)
+                    pending = definition;
+                // A regex may follow a keyword like return, but not a name
+                previous = isKeyword(i, end) ? '(' : js.charAt(end - 1);
+                i = end;
+                continue;
+            }
+
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            switch (c) {
+                case '{':
+                    if (depth == stack.length) {
+                        Definition[] grown = new Definition[depth * 2];
+                        System.arraycopy(stack, 0, grown, 0, depth);
+                        stack = grown;
+                    }
+                    stack[depth++] = pending;
+                    pending = null;
+                    break;
+                case '}':
+                    if (depth > 0) {
+                        Definition definition = stack[--depth];
+                        if (definition != null)
+                            definition.end = i + 1;
+                    }
+                    break;
+                case '"':
+                case '\'':
+                case '`':
+                    i = skipString(i, c);
+                    break;
+                case '/':
+                    if (i + 1 < length && js.charAt(i + 1) == '/') {
+                        i = skipLineComment(i) + 1;
+                        continue;
+                    } else if (i + 1 < length && js.charAt(i + 1) == '*') {
+                        i = skipBlockComment(i) + 1;
+                        continue;
+                    } else if (isRegexStart(previous)) {
+                        i = skipRegex(i);
+                        // A regex is a value like a string
+                        c = '"';
+                    }
+                    break;
+                default:
+                    break;
+            }
+            previous = c;
+            i++;
+        }
+    }
+
+    /**
+     * Checks whether the identifier at <code>start</code> begins a definition and adds it
+     * to the index.
+     *
+     * @return the new definition or null if there is none
+     */
+    private Definition readDefinition(int start, int end) {
+        int length = js.length();
+        if (end - start == 8 && js.startsWith("function", start)) {
+            // function name(
+            int nameStart = end;
+            while (nameStart < length && js.charAt(nameStart) == ' ') {
+                nameStart++;
+            }
+            int nameEnd = identifierEnd(nameStart);
+            if (nameEnd > nameStart && nameEnd < length && js.charAt(nameEnd) == '(')
+                return add(functions, nameStart, nameEnd);
+            return null;
+        }
+        if (end < length && js.charAt(end) == '=' && start > 0) {
+            char before = js.charAt(start - 1);
+            if (js.startsWith("=function(", end) && (before == ' ' || before == '\t'
+                    || before == ',' || before == ';'))
+                return add(functionVariables, start, end);
+            if (js.startsWith("={", end) && start >= 4 && js.startsWith("var ", start - 4))
+                return add(objects, start, end);
+        }
+        return null;
+    }
+
+    private Definition add(Map<String, Definition> definitions, int nameStart, int nameEnd) {
+        String name = js.substring(nameStart, nameEnd);
+        if (definitions.containsKey(name))
+            return null;
+        Definition definition = new Definition(nameStart);
+        definitions.put(name, definition);
+        return definition;
+    }
+
+    private int identifierEnd(int start) {
+        int end = start;
+        while (end < js.length() && isIdentifierPart(js.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * @return the index of the closing quote
+     */
+    private int skipString(int start, char quote) {
+        int i = start + 1;
+        while (i < js.length()) {
+            char c = js.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == quote)
+                return i;
+            i++;
+        }
+        return js.length() - 1;
+    }
+
+    private int skipLineComment(int start) {
+        int end = js.indexOf('\n', start);
+        return end < 0 ? js.length() - 1 : end;
+    }
+
+    private int skipBlockComment(int start) {
+        int end = js.indexOf("*/", start + 2);
+        return end < 0 ? js.length() - 1 : end + 1;
+    }
+
+    /**
+     * @return the index of the slash ending the regex
+     */
+    private int skipRegex(int start) {
+        boolean inClass = false;
+        int i = start + 1;
+        while (i < js.length()) {
+            char c = js.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '\n')
+                return i;
+            if (c == '[') {
+                inClass = true;
+            } else if (c == ']') {
+                inClass = false;
+            } else if (c == '/' && !inClass) {
+                return i;
+            }
+            i++;
+        }
+        return js.length() - 1;
+    }
+
+    private boolean isKeyword(int start, int end) {
+        for (String keyword : KEYWORDS) {
+            if (keyword.length() == end - start && js.startsWith(keyword, start))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * A slash starts a regex literal unless it follows something that has a value.
+     */
+    private static boolean isRegexStart(char previous) {
+        return !(isIdentifierPart(previous) || previous == ')' || previous == ']'
+                || previous == '}' || previous == '"' || previous == '\'' || previous == '`');
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '$' || c == '_';
+    }
+
+    private static final class Definition {
+
+        private final int nameStart;
+        // Exclusive end of the body, -1 while its closing brace was not found
+        private int end = -1;
+
+        private Definition(int nameStart) {
+            this.nameStart = nameStart;
+        }
+    }
+}
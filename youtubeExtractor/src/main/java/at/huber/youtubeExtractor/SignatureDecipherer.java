@@ -0,0 +1,267 @@
+package at.huber.youtubeExtractor;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.evgenii.jsevaluator.JsEvaluator;
+import com.evgenii.jsevaluator.interfaces.JsCallback;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Deciphers the signatures of one player version.
+ * <p/>
+ * There is only one instance per player js file in the process, so concurrent extractions
+ * share a single download of the player and a single extraction of its decipher functions.
+ */
+final class SignatureDecipherer {
+
+    private final static boolean CACHING = true;
+
+    private final static String LOG_TAG = "SignatureDecipherer";
+
+    // A call may also follow a line end, the player js keeps them
+    private static final Pattern patVariableFunction = Pattern.compile("(\\{|;|\\s|=)([a-zA-Z$][a-zA-Z0-9$]{0,2})\\.([a-zA-Z$][a-zA-Z0-9$]{0,2})\\(");
+    private static final Pattern patFunction = Pattern.compile("(\\{|;|\\s|=)([a-zA-Z$_][a-zA-Z0-9$]{0,2})\\(");
+    private static final Pattern patSignatureDecFunction = Pattern.compile("\\(\"signature\",(.{1,3}?)\\(.{1,10}?\\)");
+
+    private final DecipherFunctionStore store;
+    private final String jsFileName;
+
+    private String decipherFunctionName;
+    private String decipherFunctions;
+    private SignatureTransform decipherTransform;
+
+    SignatureDecipherer(DecipherFunctionStore store, String jsFileName) {
+        this.store = store;
+        this.jsFileName = jsFileName;
+    }
+
+    /**
+     * @param context may be null, the decipher functions are only kept in memory then
+     */
+    static SignatureDecipherer forPlayer(Context context, String jsFileName) {
+        return DecipherFunctionStore.getInstance(context).getDecipherer(jsFileName);
+    }
+
+    /**
+     * Makes sure the decipher functions of this player are available. They are taken from
+     * the {@link DecipherFunctionStore} or, if the player is new, extracted from the player js.
+     * Concurrent callers wait for the first one to finish.
+     *
+     * @return false if the decipher functions could not be found in the player js
+     */
+    synchronized boolean load() throws IOException {
+        if (decipherFunctionName != null && decipherFunctions != null)
+            return true;
+
+        if (CACHING) {
+            DecipherFunctionStore.Entry entry = store.get(jsFileName);
+            if (entry != null) {
+                ExtractionMetrics.getInstance().increment(ExtractionMetrics.COUNTER_DECIPHER_STORE_HIT);
+                setFunctions(entry.getFunctionName(), entry.getFunctions());
+                return true;
+            }
+        }
+
+        if (!extractFunctions())
+            return false;
+        if (CACHING) {
+            store.put(jsFileName, decipherFunctionName, decipherFunctions);
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the signatures can be deciphered without the WebView
+     */
+    synchronized boolean canDecipherInProcess() {
+        return decipherTransform != null;
+    }
+
+    /**
+     * Deciphers all signatures at once. Without a compiled transform they are evaluated by
+     * one single WebView run, which blocks the calling thread.
+     *
+     * @return the deciphered signatures in the same order or null if deciphering failed
+     */
+    String[] decipher(Context context, List<String> encSignatures) throws InterruptedException {
+        SignatureTransform transform;
+        String functionName;
+        String functions;
+        synchronized (this) {
+            transform = decipherTransform;
+            functionName = decipherFunctionName;
+            functions = decipherFunctions;
+        }
+        if (functions == null)
+            return null;
+
+        ExtractionMetrics metrics = ExtractionMetrics.getInstance();
+        long start = System.nanoTime();
+        if (transform != null) {
+            String[] signatures = new String[encSignatures.size()];
+            for (int i = 0; i < signatures.length; i++) {
+                signatures[i] = transform.apply(encSignatures.get(i));
+            }
+            metrics.recordSince(ExtractionMetrics.PHASE_DECIPHER, start);
+            return signatures;
+        }
+
+        if (YouTubeExtractor.LOGGING)
+            Log.d(LOG_TAG, "Unknown decipher operations, using the WebView");
+        metrics.increment(ExtractionMetrics.COUNTER_WEBVIEW_FALLBACK);
+        String signature = decipherViaWebView(context, functionName, functions, encSignatures);
+        metrics.recordSince(ExtractionMetrics.PHASE_WEBVIEW_DECIPHER, start);
+        if (signature == null)
+            return null;
+        String[] signatures = signature.split("\n");
+        return signatures.length == encSignatures.size() ? signatures : null;
+    }
+
+    private void setFunctions(String functionName, String functions) {
+        decipherFunctionName = functionName;
+        decipherFunctions = functions;
+        decipherTransform = SignatureTransform.compile(functionName, functions);
+    }
+
+    private boolean extractFunctions() throws IOException {
+        String decipherFunctUrl = "https://s.ytimg.com/yts/jsbin/" + jsFileName;
+
+        long start = System.nanoTime();
+        String javascriptFile = readPlayerJs(HttpTransport.get().open(decipherFunctUrl));
+        ExtractionMetrics.getInstance().recordSince(ExtractionMetrics.PHASE_PLAYER_JS, start);
+        start = System.nanoTime();
+
+        if (YouTubeExtractor.LOGGING)
+            Log.d(LOG_TAG, "Decipher FunctURL: " + decipherFunctUrl);
+        Matcher mat = patSignatureDecFunction.matcher(javascriptFile);
+        if (!mat.find())
+            return false;
+
+        String decipherFunctionName = mat.group(1);
+        if (YouTubeExtractor.LOGGING)
+            Log.d(LOG_TAG, "Decipher Functname: " + decipherFunctionName);
+
+        // One pass over the file finds every definition, the lookups are map accesses
+        String decipherFunctions = collectFunctions(PlayerJsIndex.build(javascriptFile), decipherFunctionName);
+        if (decipherFunctions == null)
+            return false;
+
+        if (YouTubeExtractor.LOGGING)
+            Log.d(LOG_TAG, "Decipher Function: " + decipherFunctions);
+        setFunctions(decipherFunctionName, decipherFunctions);
+        ExtractionMetrics.getInstance().recordSince(ExtractionMetrics.PHASE_DECIPHER_FUNCTIONS, start);
+        return true;
+    }
+
+    /**
+     * Reads the player js. The line ends are kept, {@link PlayerJsIndex} needs them to find
+     * the end of line comments.
+     */
+    static String readPlayerJs(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+        try {
+            StringBuilder sb = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                sb.append(line);
+                sb.append('\n');
+            }
+            return sb.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Assembles the main decipher function together with the functions and variables it calls.
+     *
+     * @return null if the main decipher function is not in the player js
+     */
+    static String collectFunctions(PlayerJsIndex index, String decipherFunctionName) {
+        String mainDecipherFunct = index.getFunctionVariable(decipherFunctionName);
+        if (mainDecipherFunct == null)
+            mainDecipherFunct = index.getFunction(decipherFunctionName);
+        if (mainDecipherFunct == null)
+            return null;
+
+        StringBuilder decipherFunctions = new StringBuilder(mainDecipherFunct);
+        Set<String> included = new HashSet<>();
+        included.add(decipherFunctionName);
+        // Search the main function for extra functions and variables
+        // needed for deciphering
+        // Search for variables
+        Matcher mat = patVariableFunction.matcher(mainDecipherFunct);
+        while (mat.find()) {
+            String variableName = mat.group(2);
+            if (!included.add("var " + variableName))
+                continue;
+            String variableDef = index.getObject(variableName);
+            if (variableDef != null)
+                decipherFunctions.append(variableDef);
+        }
+        // Search for functions
+        mat = patFunction.matcher(mainDecipherFunct);
+        while (mat.find()) {
+            String functionName = mat.group(2);
+            if (!included.add(functionName))
+                continue;
+            String functionDef = index.getFunction(functionName);
+            if (functionDef != null)
+                decipherFunctions.append(functionDef);
+        }
+        return decipherFunctions.toString();
+    }
+
+    private static String decipherViaWebView(final Context context, String functionName, String functions,
+                                             List<String> encSignatures) throws InterruptedException {
+        if (context == null) {
+            return null;
+        }
+
+        final StringBuilder stb = new StringBuilder(functions + " function decipher(");
+        stb.append("){return ");
+        for (int i = 0; i < encSignatures.size(); i++) {
+            if (i < encSignatures.size() - 1)
+                stb.append(functionName).append("('").append(encSignatures.get(i)).
+                        append("')+\"\\n\"+");
+            else
+                stb.append(functionName).append("('").append(encSignatures.get(i)).
+                        append("')");
+        }
+        stb.append("};decipher();");
+
+        final CountDownLatch jsExecuting = new CountDownLatch(1);
+        final String[] decipheredSignature = new String[1];
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+
+            @Override
+            public void run() {
+                JsEvaluator js = new JsEvaluator(context);
+                js.evaluate(stb.toString(),
+                        new JsCallback() {
+                            @Override
+                            public void onResult(final String result) {
+                                decipheredSignature[0] = result;
+                                jsExecuting.countDown();
+                            }
+                        });
+            }
+        });
+        jsExecuting.await(7, TimeUnit.SECONDS);
+        return decipheredSignature[0];
+    }
+}
@@ -0,0 +1,189 @@
+package at.huber.youtubeExtractor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pure java replacement for evaluating the player's decipher function in a WebView.
+ * <p/>
+ * The decipher function only ever calls a helper object that reverses, splices or swaps
+ * the characters of the signature. The call sequence is parsed once and replayed for
+ * every signature. If the player does anything else {@link #compile} returns null and the
+ * caller has to fall back to the JavaScript evaluation.
+ */
+final class SignatureTransform {
+
+    private static final int OP_REVERSE = 0;
+    private static final int OP_SPLICE = 1;
+    private static final int OP_SWAP = 2;
+
+    private static final Pattern patSplitStatement = Pattern.compile("^([a-zA-Z$_][a-zA-Z0-9$_]*)=\\1\\.split\\(\"\"\\)$");
+    private static final Pattern patJoinStatement = Pattern.compile("^return ([a-zA-Z$_][a-zA-Z0-9$_]*)\\.join\\(\"\"\\)$");
+    private static final Pattern patCallStatement = Pattern.compile("^([a-zA-Z$_][a-zA-Z0-9$_]*)(?:\\.([a-zA-Z$_][a-zA-Z0-9$_]*)|\\[\"([a-zA-Z$_][a-zA-Z0-9$_]*)\"\\])\\(([a-zA-Z$_][a-zA-Z0-9$_]*),(\\d+)\\)$");
+    private static final Pattern patHelperMethod = Pattern.compile("(?:\"([a-zA-Z$_][a-zA-Z0-9$_]*)\"|([a-zA-Z$_][a-zA-Z0-9$_]*)):function\\([a-zA-Z0-9$_,]*\\)\\{([^{}]*)\\}");
+
+    private final String source;
+    private final int[] ops;
+    private final int[] args;
+
+    private SignatureTransform(String source, int[] ops, int[] args) {
+        this.source = source;
+        this.ops = ops;
+        this.args = args;
+    }
+
+    /**
+     * @return true if this transform was compiled from exactly these functions
+     */
+    boolean isCompiledFrom(String decipherFunctions) {
+        return source.equals(decipherFunctions);
+    }
+
+    /**
+     * Compiles the decipher functions which were extracted from the player js.
+     *
+     * @param decipherFunctionName name of the main decipher function
+     * @param decipherFunctions    the main function and the helpers it depends on
+     * @return the compiled transform or null if the functions use unknown operations
+     */
+    static SignatureTransform compile(String decipherFunctionName, String decipherFunctions) {
+        if (decipherFunctionName == null || decipherFunctions == null)
+            return null;
+
+        String mainBody = findMainBody(decipherFunctionName, decipherFunctions);
+        if (mainBody == null)
+            return null;
+
+        String[] statements = mainBody.split(";");
+        if (statements.length < 2)
+            return null;
+        Matcher mat = patSplitStatement.matcher(statements[0].trim());
+        if (!mat.find())
+            return null;
+        String param = mat.group(1);
+        mat = patJoinStatement.matcher(statements[statements.length - 1].trim());
+        if (!mat.find() || !param.equals(mat.group(1)))
+            return null;
+
+        Map<String, Map<String, Integer>> helpers = new HashMap<>();
+        List<int[]> steps = new ArrayList<>();
+        for (int i = 1; i < statements.length - 1; i++) {
+            mat = patCallStatement.matcher(statements[i].trim());
+            if (!mat.find() || !param.equals(mat.group(4)))
+                return null;
+            String helperName = mat.group(1);
+            String methodName = mat.group(2) != null ? mat.group(2) : mat.group(3);
+
+            Map<String, Integer> methods = helpers.get(helperName);
+            if (methods == null) {
+                methods = parseHelper(helperName, decipherFunctions);
+                if (methods == null)
+                    return null;
+                helpers.put(helperName, methods);
+            }
+            Integer op = methods.get(methodName);
+            if (op == null)
+                return null;
+            steps.add(new int[]{op, Integer.parseInt(mat.group(5))});
+        }
+
+        int[] ops = new int[steps.size()];
+        int[] args = new int[steps.size()];
+        for (int i = 0; i < steps.size(); i++) {
+            ops[i] = steps.get(i)[0];
+            args[i] = steps.get(i)[1];
+        }
+        return new SignatureTransform(decipherFunctions, ops, args);
+    }
+
+    /**
+     * Applies the compiled operations to one enciphered signature.
+     */
+    String apply(String signature) {
+        char[] sig = signature.toCharArray();
+        int start = 0;
+        int length = sig.length;
+        for (int i = 0; i < ops.length; i++) {
+            switch (ops[i]) {
+                case OP_REVERSE:
+                    for (int l = start, r = start + length - 1; l < r; l++, r--) {
+                        char c = sig[l];
+                        sig[l] = sig[r];
+                        sig[r] = c;
+                    }
+                    break;
+                case OP_SPLICE:
+                    int count = Math.min(args[i], length);
+                    start += count;
+                    length -= count;
+                    break;
+                case OP_SWAP:
+                    if (length > 0) {
+                        int pos = start + args[i] % length;
+                        char c = sig[start];
+                        sig[start] = sig[pos];
+                        sig[pos] = c;
+                    }
+                    break;
+            }
+        }
+        return new String(sig, start, length);
+    }
+
+    private static String findMainBody(String functionName, String decipherFunctions) {
+        int startIndex = decipherFunctions.indexOf("var " + functionName + "=function(");
+        if (startIndex < 0)
+            startIndex = decipherFunctions.indexOf("function " + functionName + "(");
+        if (startIndex < 0)
+            return null;
+        startIndex = decipherFunctions.indexOf('{', startIndex);
+        if (startIndex < 0)
+            return null;
+        int endIndex = decipherFunctions.indexOf('}', startIndex);
+        if (endIndex < 0)
+            return null;
+        return decipherFunctions.substring(startIndex + 1, endIndex);
+    }
+
+    private static Map<String, Integer> parseHelper(String helperName, String decipherFunctions) {
+        String helperDef = "var " + helperName + "={";
+        int startIndex = decipherFunctions.indexOf(helperDef);
+        if (startIndex < 0)
+            return null;
+        startIndex += helperDef.length();
+
+        int endIndex = -1;
+        for (int braces = 1, i = startIndex; i < decipherFunctions.length(); i++) {
+            char c = decipherFunctions.charAt(i);
+            if (c == '{') {
+                braces++;
+            } else if (c == '}' && --braces == 0) {
+                endIndex = i;
+                break;
+            }
+        }
+        if (endIndex < 0)
+            return null;
+
+        Map<String, Integer> methods = new HashMap<>();
+        Matcher mat = patHelperMethod.matcher(decipherFunctions.substring(startIndex, endIndex));
+        while (mat.find()) {
+            String name = mat.group(1) != null ? mat.group(1) : mat.group(2);
+            String body = mat.group(3);
+            if (body.contains(".reverse(")) {
+                methods.put(name, OP_REVERSE);
+            } else if (body.contains(".splice(")) {
+                methods.put(name, OP_SPLICE);
+            } else if (body.contains("%") && body.contains(".length")) {
+                methods.put(name, OP_SWAP);
+            } else {
+                return null;
+            }
+        }
+        return methods.isEmpty() ? null : methods;
+    }
+}
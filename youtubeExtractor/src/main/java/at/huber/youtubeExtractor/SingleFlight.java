@@ -0,0 +1,139 @@
+package at.huber.youtubeExtractor;
+
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Makes concurrent extractions of the same video with the same options share one run.
+ * <p/>
+ * The first caller runs its extraction, everyone asking for the same video while it is
+ * in flight waits for it and gets the same result. A caller which cancels only leaves the
+ * flight, the shared extraction is just cancelled once nobody waits for it anymore.
+ */
+final class SingleFlight {
+
+    private final static String LOG_TAG = "SingleFlight";
+
+    private static final Map<String, Flight> flights = new HashMap<>();
+
+    private SingleFlight() {
+    }
+
+    /**
+     * Runs the extraction or joins the one in flight for the same video and options.
+     * The {@link VideoMeta} of a joining extraction is taken from the shared one.
+     *
+     * @return the extracted files or null if nothing was found
+     */
+    static SparseArray<YtFile> run(StreamExtraction extraction, boolean useStreamUrlCache)
+            throws IOException, InterruptedException {
+        String key = extraction.getKey();
+        Flight flight;
+        boolean leader = false;
+        synchronized (flights) {
+            flight = flights.get(key);
+            if (flight == null) {
+                flight = new Flight(extraction);
+                flights.put(key, flight);
+                leader = true;
+            }
+            flight.members.add(extraction);
+        }
+
+        if (leader) {
+            try {
+                flight.ytFiles = flight.runner.runCached(useStreamUrlCache);
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                flight.error = e;
+            } finally {
+                synchronized (flights) {
+                    flights.remove(key);
+                }
+                flight.done.countDown();
+            }
+        } else {
+            if (YouTubeExtractor.LOGGING)
+                Log.d(LOG_TAG, "Joining the extraction of " + key);
+            try {
+                flight.done.await();
+            } finally {
+                synchronized (flights) {
+                    flight.members.remove(extraction);
+                }
+            }
+            // The runner waits for the WebView run of its batch, this one does not
+            if (flight.runner.isDeferred())
+                return run(extraction, useStreamUrlCache);
+        }
+
+        extraction.setVideoMeta(flight.runner.getVideoMeta());
+        if (extraction.isCancelled())
+            throw new InterruptedIOException("Extraction of " + key + " cancelled");
+        if (flight.error instanceof IOException)
+            throw (IOException) flight.error;
+        if (flight.error instanceof InterruptedException)
+            throw (InterruptedException) flight.error;
+        if (flight.error != null)
+            throw (RuntimeException) flight.error;
+        return flight.ytFiles;
+    }
+
+    /**
+     * Cancels the extraction. If it is running for others as well it goes on for them.
+     *
+     * @return false if the extraction keeps running for others, the calling thread must not
+     * be interrupted then
+     */
+    static boolean cancel(StreamExtraction extraction) {
+        StreamExtraction toCancel = extraction;
+        boolean shared = false;
+        synchronized (flights) {
+            Flight flight = flights.get(extraction.getKey());
+            if (flight != null && flight.members.remove(extraction)) {
+                if (flight.members.isEmpty()) {
+                    toCancel = flight.runner;
+                } else if (flight.runner == extraction) {
+                    shared = true;
+                }
+            }
+        }
+        if (shared)
+            return false;
+        toCancel.cancel();
+        // The waiting member stops right away, the runner with the next request
+        if (toCancel != extraction)
+            extraction.cancel();
+        return true;
+    }
+
+    /**
+     * @return the number of extractions running or waiting under the key
+     */
+    static int getMemberCount(String key) {
+        synchronized (flights) {
+            Flight flight = flights.get(key);
+            return flight != null ? flight.members.size() : 0;
+        }
+    }
+
+    private static final class Flight {
+
+        private final StreamExtraction runner;
+        private final List<StreamExtraction> members = new ArrayList<>();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private SparseArray<YtFile> ytFiles;
+        private Exception error;
+
+        private Flight(StreamExtraction runner) {
+            this.runner = runner;
+        }
+    }
+}
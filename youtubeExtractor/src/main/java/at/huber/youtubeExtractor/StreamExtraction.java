@@ -0,0 +1,696 @@
+package at.huber.youtubeExtractor;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The extraction of the stream urls of a single video.
+ * <p/>
+ * It is split in two steps so several extractions can share one decipher run:
+ * {@link #fetchStreams()} collects the streams and their enciphered signatures,
+ * {@link #complete(String[])} applies the deciphered signatures and parses the dash manifest.
+ * <p/>
+ * An extraction can be cancelled from any thread by {@link #cancel()}.
+ */
+final class StreamExtraction {
+
+    private final static String LOG_TAG = "YouTubeExtractor";
+    private final static int DASH_PARSE_RETRIES = 5;
+    private final static long DASH_RETRY_DELAY_MS = 100;
+    private final static long DASH_MAX_RETRY_DELAY_MS = 1600;
+    // Overall time the dash manifest may take including all retries
+    private final static long DASH_DEADLINE_MS = 10000;
+
+    private static final ThreadPoolExecutor DASH_EXECUTOR = new ThreadPoolExecutor(2, 2,
+            30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+
+    static {
+        DASH_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private static final Pattern patYouTubePageLink = Pattern.compile("(http|https)://(www\\.|m.|)youtube\\.com/watch\\?v=(.+?)( |\\z|&)");
+    private static final Pattern patYouTubeShortLink = Pattern.compile("(http|https)://(www\\.|)youtu.be/(.+?)( |\\z|&)");
+
+    private static final Pattern patDashManifest2 = Pattern.compile("\"dashmpd\":\"(.+?)\"");
+    private static final Pattern patDashManifestEncSig = Pattern.compile("/s/([0-9A-F|\\.]{10,}?)(/|\\z)");
+
+    private static final Pattern patHlsItag = Pattern.compile("/itag/(\\d+?)/");
+
+    private static final Pattern patItag = Pattern.compile("itag=([0-9]+?)(&|,)");
+    private static final Pattern patEncSig = Pattern.compile("s=([0-9A-F|\\.]{10,}?)(&|,|\")");
+    private static final Pattern patUrl = Pattern.compile("url=(.+?)(&|,)");
+
+    private static final Pattern patDecryptionJsFile = Pattern.compile("jsbin\\\\/(player-(.+?).js)");
+
+    private final Context context;
+    private final String videoID;
+    private final boolean parseDashManifest;
+    private final boolean includeWebM;
+    private final boolean useHttp;
+
+    private VideoMeta videoMeta;
+    private SparseArray<YtFile> ytFiles;
+    private String streamMap;
+    private String dashMpdUrl;
+    private String jsFileName;
+    private SparseArray<String> encSignatures;
+    private DashFetch dashFetch;
+
+    private volatile boolean cancelled;
+    // Set by a batch which evaluates the signatures of many videos in one WebView run
+    private boolean deferWebView;
+    private boolean deferred;
+    // Every response body opened for this extraction, closed ones included
+    private final List<InputStream> openStreams = new ArrayList<>();
+
+    StreamExtraction(Context context, String videoID, boolean parseDashManifest, boolean includeWebM,
+                     boolean useHttp) {
+        this.context = context;
+        this.videoID = videoID;
+        this.parseDashManifest = parseDashManifest;
+        this.includeWebM = includeWebM;
+        this.useHttp = useHttp;
+    }
+
+    /**
+     * @param ytUrl the youtube page link or video id
+     * @return the video id or null if the link has a wrong format
+     */
+    static String parseVideoId(String ytUrl) {
+        if (ytUrl == null) {
+            return null;
+        }
+        Matcher mat = patYouTubePageLink.matcher(ytUrl);
+        if (mat.find()) {
+            return mat.group(3);
+        }
+        mat = patYouTubeShortLink.matcher(ytUrl);
+        if (mat.find()) {
+            return mat.group(3);
+        } else if (ytUrl.matches("\\p{Graph}+?")) {
+            return ytUrl;
+        }
+        return null;
+    }
+
+    String getVideoId() {
+        return videoID;
+    }
+
+    VideoMeta getVideoMeta() {
+        return videoMeta;
+    }
+
+    void setVideoMeta(VideoMeta videoMeta) {
+        this.videoMeta = videoMeta;
+    }
+
+    /**
+     * @return the same key for all extractions of the same video with the same options
+     */
+    String getKey() {
+        return StreamUrlCache.buildKey(videoID, parseDashManifest, includeWebM) + (useHttp ? "h" : "");
+    }
+
+    /**
+     * Answers from the {@link StreamUrlCache} if the urls have been resolved before, otherwise
+     * runs the whole extraction and caches its result.
+     *
+     * @param useStreamUrlCache false if the cache must not be used at all
+     */
+    SparseArray<YtFile> runCached(boolean useStreamUrlCache) throws IOException, InterruptedException {
+        StreamUrlCache streamUrlCache = null;
+        String cacheKey = StreamUrlCache.buildKey(videoID, parseDashManifest, includeWebM);
+        if (useStreamUrlCache && context != null) {
+            streamUrlCache = StreamUrlCache.getInstance(context);
+            StreamUrlCache.CacheEntry entry = streamUrlCache.get(cacheKey);
+            if (entry != null) {
+                videoMeta = entry.getVideoMeta();
+                return entry.getYtFiles();
+            }
+        }
+
+        ExtractionMetrics metrics = ExtractionMetrics.getInstance();
+        long start = System.nanoTime();
+        SparseArray<YtFile> ytFiles;
+        try {
+            ytFiles = run();
+        } catch (IOException | InterruptedException e) {
+            if (!cancelled)
+                metrics.increment(ExtractionMetrics.COUNTER_FAILURE);
+            throw e;
+        }
+        // Finished by completeDeferred() once the batch deciphered the signatures
+        if (deferred)
+            return null;
+        metrics.recordSince(ExtractionMetrics.PHASE_TOTAL, start);
+        if (ytFiles == null)
+            metrics.increment(ExtractionMetrics.COUNTER_FAILURE);
+        if (streamUrlCache != null) {
+            streamUrlCache.put(cacheKey, ytFiles, videoMeta);
+        }
+        return ytFiles;
+    }
+
+    /**
+     * Makes {@link #run()} stop before the signatures are deciphered if that needs the WebView,
+     * see {@link #isDeferred()}.
+     */
+    void setDeferWebView(boolean deferWebView) {
+        this.deferWebView = deferWebView;
+    }
+
+    /**
+     * @return true if the extraction stopped to have its signatures deciphered together with
+     * others, it is finished by {@link #completeDeferred(String[], boolean)}
+     */
+    boolean isDeferred() {
+        return deferred;
+    }
+
+    /**
+     * Completes a deferred extraction with its deciphered signatures and caches the result.
+     */
+    SparseArray<YtFile> completeDeferred(String[] signatures, boolean useStreamUrlCache)
+            throws InterruptedException {
+        SparseArray<YtFile> ytFiles = complete(signatures);
+        if (ytFiles == null)
+            ExtractionMetrics.getInstance().increment(ExtractionMetrics.COUNTER_FAILURE);
+        if (useStreamUrlCache && context != null) {
+            StreamUrlCache.getInstance(context).put(
+                    StreamUrlCache.buildKey(videoID, parseDashManifest, includeWebM), ytFiles, videoMeta);
+        }
+        return ytFiles;
+    }
+
+    /**
+     * Runs the whole extraction on the calling thread.
+     */
+    SparseArray<YtFile> run() throws IOException, InterruptedException {
+        if (!fetchStreams())
+            return null;
+        if (!needsDecipher())
+            return complete(null);
+
+        checkCancelled();
+        SignatureDecipherer decipherer = SignatureDecipherer.forPlayer(context, jsFileName);
+        if (!decipherer.load())
+            return null;
+        if (deferWebView && !decipherer.canDecipherInProcess()) {
+            deferred = true;
+            return null;
+        }
+        checkCancelled();
+        String[] signatures = decipherer.decipher(context, getEncSignatures());
+        if (signatures == null)
+            return null;
+        return complete(signatures);
+    }
+
+    /**
+     * Stops the extraction as soon as possible. The requests in flight are aborted, which
+     * frees their connections right away, and the thread running the extraction fails with
+     * an {@link InterruptedIOException} at its next request. A request still connecting is
+     * aborted once it got its response headers.
+     */
+    void cancel() {
+        cancelled = true;
+        List<InputStream> streams;
+        synchronized (openStreams) {
+            streams = new ArrayList<>(openStreams);
+            openStreams.clear();
+        }
+        for (InputStream in : streams) {
+            HttpTransport.get().abort(in);
+        }
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    private void checkCancelled() throws InterruptedIOException {
+        if (cancelled)
+            throw new InterruptedIOException("Extraction of " + videoID + " cancelled");
+    }
+
+    /**
+     * Sends a request through the {@link HttpTransport} and keeps its response body so
+     * {@link #cancel()} can abort it.
+     */
+    private InputStream open(String url, int readTimeoutMs) throws IOException {
+        checkCancelled();
+        InputStream in = HttpTransport.get().open(url, readTimeoutMs);
+        synchronized (openStreams) {
+            if (!cancelled) {
+                openStreams.add(in);
+                return in;
+            }
+        }
+        HttpTransport.get().abort(in);
+        throw new InterruptedIOException("Extraction of " + videoID + " cancelled");
+    }
+
+    /**
+     * Downloads the video info and collects the available streams.
+     *
+     * @return false if there is nothing left to do, either because nothing was found or
+     * the video is a live stream whose files are already available.
+     */
+    boolean fetchStreams() throws IOException {
+        String ytInfoUrl = (useHttp) ? "http://" : "https://";
+        ytInfoUrl += "www.youtube.com/get_video_info?video_id=" + videoID + "&eurl="
+                + URLEncoder.encode("https://youtube.googleapis.com/v/" + videoID, "UTF-8");
+
+        Map<String, String> videoInfo = null;
+        Reader reader = null;
+        long start = System.nanoTime();
+        try {
+            reader = new InputStreamReader(open(ytInfoUrl, 0), "UTF-8");
+            videoInfo = VideoInfoParser.parse(reader, VideoInfoParser.VIDEO_INFO_KEYS);
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (reader != null)
+                reader.close();
+        }
+        ExtractionMetrics.getInstance().recordSince(ExtractionMetrics.PHASE_VIDEO_INFO, start);
+        if (videoInfo == null)
+            return false;
+
+        parseVideoMeta(videoInfo);
+
+        if (videoMeta.isLiveStream()) {
+            ytFiles = parseHlsStreams(videoInfo.get(VideoInfoParser.KEY_HLSVP));
+            return false;
+        }
+
+        ytFiles = new SparseArray<>();
+        // Some videos are using a ciphered signature we need to get the
+        // deciphering js-file from the youtubepage.
+        if (!"False".equals(videoInfo.get(VideoInfoParser.KEY_USE_CIPHER_SIGNATURE))) {
+            if (!fetchWatchPageStreams())
+                return false;
+        } else {
+            if (parseDashManifest) {
+                dashMpdUrl = videoInfo.get(VideoInfoParser.KEY_DASH_MPD);
+            }
+            start = System.nanoTime();
+            addStreams(VideoInfoParser.parseStreams(videoInfo.get(VideoInfoParser.KEY_FMT_STREAM_MAP)));
+            addStreams(VideoInfoParser.parseStreams(videoInfo.get(VideoInfoParser.KEY_ADAPTIVE_FMTS)));
+            ExtractionMetrics.getInstance().recordSince(ExtractionMetrics.PHASE_STREAM_PARSING, start);
+        }
+        if (encSignatures != null && encSignatures.size() > 0 && jsFileName == null) {
+            Log.e(LOG_TAG, "Enciphered signatures but no player js found");
+            return false;
+        }
+        // A signed manifest can already be downloaded while the signatures are deciphered
+        if (parseDashManifest && dashMpdUrl != null && needsDecipher() && encSignatures.get(0) == null) {
+            dashFetch = new DashFetch(dashMpdUrl);
+            DASH_EXECUTOR.execute(dashFetch);
+        }
+        return true;
+    }
+
+    private void addStreams(List<Map<String, String>> streams) throws UnsupportedEncodingException {
+        for (Map<String, String> stream : streams) {
+            String itagValue = stream.get("itag");
+            String url = stream.get("url");
+            if (itagValue == null || url == null)
+                continue;
+            int itag;
+            try {
+                itag = Integer.parseInt(itagValue);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (YouTubeExtractor.LOGGING)
+                Log.d(LOG_TAG, "Itag found:" + itag);
+            Format format = YouTubeExtractor.getFormat(itag);
+            if (format == null) {
+                if (YouTubeExtractor.LOGGING)
+                    Log.d(LOG_TAG, "Itag not in list:" + itag);
+                continue;
+            } else if (!includeWebM && format.getExt().equals("webm")) {
+                continue;
+            }
+            ytFiles.put(itag, new YtFile(format, VideoInfoParser.decode(url)));
+        }
+    }
+
+    /**
+     * Collects the streams, their enciphered signatures and the player js from the watch page.
+     */
+    private boolean fetchWatchPageStreams() throws IOException {
+        // Get the video directly from the youtubepage. Same host as the video info, so the
+        // connection of that request can be reused.
+        BufferedReader reader = null;
+        long start = System.nanoTime();
+        try {
+            reader = new BufferedReader(new InputStreamReader(
+                    open("https://www.youtube.com/watch?v=" + videoID, 0)));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Log.d("line", line);
+                if (line.contains("url_encoded_fmt_stream_map")) {
+                    streamMap = line.replace("\\u0026", "&");
+                    break;
+                }
+            }
+        } finally {
+            if (reader != null)
+                reader.close();
+        }
+        ExtractionMetrics.getInstance().recordSince(ExtractionMetrics.PHASE_WATCH_PAGE, start);
+        if (streamMap == null)
+            return false;
+        start = System.nanoTime();
+        encSignatures = new SparseArray<>();
+
+        jsFileName = findPlayerJsFileName(streamMap);
+
+        Matcher mat;
+        if (parseDashManifest) {
+            mat = patDashManifest2.matcher(streamMap);
+            if (mat.find()) {
+                dashMpdUrl = mat.group(1).replace("\\/", "/");
+                mat = patDashManifestEncSig.matcher(dashMpdUrl);
+                if (mat.find()) {
+                    encSignatures.append(0, mat.group(1));
+                }
+            }
+        }
+
+        String[] streams = streamMap.split(",|url_encoded_fmt_stream_map|&adaptive_fmts=");
+        for (String encStream : streams) {
+            encStream = encStream + ",";
+            if (!encStream.contains("itag%3D")) {
+                continue;
+            }
+            String stream;
+            stream = URLDecoder.decode(encStream, "UTF-8");
+
+            mat = patItag.matcher(stream);
+            int itag;
+            if (mat.find()) {
+                itag = Integer.parseInt(mat.group(1));
+                if (YouTubeExtractor.LOGGING)
+                    Log.d(LOG_TAG, "Itag found:" + itag);
+                Format format = YouTubeExtractor.getFormat(itag);
+                if (format == null) {
+                    if (YouTubeExtractor.LOGGING)
+                        Log.d(LOG_TAG, "Itag not in list:" + itag);
+                    continue;
+                } else if (!includeWebM && format.getExt().equals("webm")) {
+                    continue;
+                }
+            } else {
+                continue;
+            }
+
+            if (jsFileName != null) {
+                mat = patEncSig.matcher(stream);
+                if (mat.find()) {
+                    encSignatures.append(itag, mat.group(1));
+                }
+            }
+            mat = patUrl.matcher(encStream);
+            String url = null;
+            if (mat.find()) {
+                url = mat.group(1);
+            }
+
+            if (url != null) {
+                Format format = YouTubeExtractor.getFormat(itag);
+                String finalUrl = URLDecoder.decode(url, "UTF-8");
+                YtFile newVideo = new YtFile(format, finalUrl);
+                ytFiles.put(itag, newVideo);
+            }
+        }
+        ExtractionMetrics.getInstance().recordSince(ExtractionMetrics.PHASE_STREAM_PARSING, start);
+        return true;
+    }
+
+    /**
+     * @param line a line of the watch page
+     * @return the name of the player js file referenced in the line or null if there is none
+     */
+    static String findPlayerJsFileName(String line) {
+        Matcher mat = patDecryptionJsFile.matcher(line);
+        return mat.find() ? mat.group(1).replace("\\/", "/") : null;
+    }
+
+    /**
+     * @return true if the signatures returned by {@link #getEncSignatures()} have to be
+     * deciphered by the {@link SignatureDecipherer} of {@link #getPlayerJsFileName()}
+     */
+    boolean needsDecipher() {
+        return encSignatures != null && encSignatures.size() > 0;
+    }
+
+    String getPlayerJsFileName() {
+        return jsFileName;
+    }
+
+    List<String> getEncSignatures() {
+        List<String> signatures = new ArrayList<>(encSignatures.size());
+        for (int i = 0; i < encSignatures.size(); i++) {
+            signatures.add(encSignatures.valueAt(i));
+        }
+        return signatures;
+    }
+
+    /**
+     * Applies the deciphered signatures and parses the dash manifest.
+     *
+     * @param signatures the deciphered signatures in the order of {@link #getEncSignatures()}
+     *                   or null if there were none.
+     * @return the extracted files or null if nothing was found
+     */
+    SparseArray<YtFile> complete(String[] signatures) throws InterruptedException {
+        if (ytFiles == null || cancelled)
+            return null;
+        if (videoMeta.isLiveStream())
+            return ytFiles.size() == 0 ? null : ytFiles;
+
+        if (needsDecipher()) {
+            if (YouTubeExtractor.LOGGING)
+                Log.d(LOG_TAG, "Decipher signatures");
+            if (signatures == null)
+                return null;
+            for (int i = 0; i < encSignatures.size() && i < signatures.length; i++) {
+                int key = encSignatures.keyAt(i);
+                if (key == 0) {
+                    dashMpdUrl = dashMpdUrl.replace("/s/" + encSignatures.get(key), "/signature/" + signatures[i]);
+                } else {
+                    ytFiles.get(key).appendToUrl("signature", signatures[i]);
+                }
+            }
+        }
+
+        if (parseDashManifest && dashMpdUrl != null) {
+            if (dashFetch == null)
+                dashFetch = new DashFetch(dashMpdUrl);
+            SparseArray<YtFile> dashFiles = dashFetch.await();
+            for (int i = 0; i < dashFiles.size(); i++) {
+                ytFiles.put(dashFiles.keyAt(i), dashFiles.valueAt(i));
+            }
+        }
+
+        if (ytFiles.size() == 0) {
+            if (YouTubeExtractor.LOGGING && streamMap != null)
+                Log.d(LOG_TAG, streamMap);
+            return null;
+        }
+        return ytFiles;
+    }
+
+    private SparseArray<YtFile> parseHlsStreams(String hlsvp) throws IOException {
+        SparseArray<YtFile> ytFiles = new SparseArray<>();
+        if (hlsvp == null)
+            return ytFiles;
+
+        Matcher mat;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(open(hlsvp, 0)));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("https://") || line.startsWith("http://")) {
+                    mat = patHlsItag.matcher(line);
+                    if (mat.find()) {
+                        int itag = Integer.parseInt(mat.group(1));
+                        Format format = YouTubeExtractor.getFormat(itag);
+                        if (format == null) {
+                            if (YouTubeExtractor.LOGGING)
+                                Log.d(LOG_TAG, "Itag not in list:" + itag);
+                            continue;
+                        }
+                        ytFiles.put(itag, new YtFile(format, line));
+                    }
+                }
+            }
+        } finally {
+            if (reader != null)
+                reader.close();
+        }
+
+        if (ytFiles.size() == 0 && YouTubeExtractor.LOGGING)
+            Log.d(LOG_TAG, "No streams found in " + hlsvp);
+        return ytFiles;
+    }
+
+    private void parseVideoMeta(Map<String, String> videoInfo) {
+        boolean isLiveStream = videoInfo.get(VideoInfoParser.KEY_HLSVP) != null;
+        String title = videoInfo.get(VideoInfoParser.KEY_TITLE);
+        String author = videoInfo.get(VideoInfoParser.KEY_AUTHOR);
+        String channelId = videoInfo.get(VideoInfoParser.KEY_CHANNEL_ID);
+        long length = parseLong(videoInfo.get(VideoInfoParser.KEY_LENGTH));
+        long viewCount = parseLong(videoInfo.get(VideoInfoParser.KEY_VIEW_COUNT));
+        videoMeta = new VideoMeta(videoID, title, author, channelId, length, viewCount, isLiveStream);
+    }
+
+    private static long parseLong(String value) {
+        if (value == null)
+            return 0;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Downloads and parses the dash manifest, either on the {@link #DASH_EXECUTOR} or on the
+     * thread that needs the result, whichever gets to it first.
+     */
+    private final class DashFetch implements Runnable {
+
+        private final String url;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final SparseArray<YtFile> dashFiles = new SparseArray<>();
+        private final long deadline;
+
+        private DashFetch(String url) {
+            this.url = url;
+            this.deadline = System.currentTimeMillis() + DASH_DEADLINE_MS;
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true))
+                return;
+            try {
+                fetchWithRetries();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                done.countDown();
+            }
+        }
+
+        /**
+         * @return the dash streams, empty if the manifest could not be loaded in time
+         */
+        SparseArray<YtFile> await() throws InterruptedException {
+            if (claimed.compareAndSet(false, true)) {
+                try {
+                    fetchWithRetries();
+                } finally {
+                    done.countDown();
+                }
+            } else {
+                long start = System.nanoTime();
+                boolean finished = done.await(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                ExtractionMetrics.getInstance().recordSince(ExtractionMetrics.PHASE_DASH_WAIT, start);
+                if (!finished) {
+                    Log.e(LOG_TAG, "Dash manifest took too long");
+                    ExtractionMetrics.getInstance().increment(ExtractionMetrics.COUNTER_DASH_TIMEOUT);
+                    return new SparseArray<>();
+                }
+            }
+            synchronized (dashFiles) {
+                return dashFiles.clone();
+            }
+        }
+
+        private void fetchWithRetries() throws InterruptedException {
+            ExtractionMetrics metrics = ExtractionMetrics.getInstance();
+            long start = System.nanoTime();
+            long delay = DASH_RETRY_DELAY_MS;
+            try {
+                for (int i = 0; i < DASH_PARSE_RETRIES && !cancelled; i++) {
+                    if (i > 0)
+                        metrics.increment(ExtractionMetrics.COUNTER_DASH_RETRY);
+                    try {
+                        fetch();
+                        return;
+                    } catch (IOException io) {
+                        // It sometimes fails to connect for no apparent reason. We just retry.
+                        if (YouTubeExtractor.LOGGING)
+                            Log.d(LOG_TAG, "Failed to parse dash manifest " + (i + 1));
+                    }
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= delay) {
+                        metrics.increment(ExtractionMetrics.COUNTER_DASH_TIMEOUT);
+                        return;
+                    }
+                    Thread.sleep(delay);
+                    delay = Math.min(delay * 2, DASH_MAX_RETRY_DELAY_MS);
+                }
+            } finally {
+                metrics.recordSince(ExtractionMetrics.PHASE_DASH, start);
+            }
+        }
+
+        private void fetch() throws IOException {
+            InputStream in = null;
+            try {
+                in = new BufferedInputStream(open(url,
+                        (int) Math.max(1, deadline - System.currentTimeMillis())));
+                DashManifestParser.parse(in, new DashManifestParser.Listener() {
+                    @Override
+                    public void onStream(int itag, String streamUrl) {
+                        Format format = YouTubeExtractor.getFormat(itag);
+                        if (format == null)
+                            return;
+                        if (!includeWebM && format.getExt().equals("webm"))
+                            return;
+                        streamUrl = streamUrl.replace(",", "%2C").
+                                replace("mime=audio/", "mime=audio%2F").
+                                replace("mime=video/", "mime=video%2F");
+                        synchronized (dashFiles) {
+                            dashFiles.put(itag, new YtFile(format, streamUrl));
+                        }
+                    }
+                });
+            } finally {
+                if (in != null)
+                    in.close();
+            }
+        }
+    }
+}
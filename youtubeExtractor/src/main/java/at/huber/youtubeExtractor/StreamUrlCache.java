@@ -0,0 +1,285 @@
+package at.huber.youtubeExtractor;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Size bounded disk cache for already resolved stream urls and their {@link VideoMeta}.
+ * <p/>
+ * Entries are valid until the earliest <code>expire</code> parameter found in the
+ * googlevideo urls of the entry, so a hit never hands out a stale link.
+ */
+public class StreamUrlCache {
+
+    private final static String LOG_TAG = "StreamUrlCache";
+    private final static String CACHE_DIR_NAME = "yt_stream_urls";
+    private final static int FILE_VERSION = 1;
+
+    private final static int MAX_DISK_ENTRIES = 64;
+    private final static int MAX_MEMORY_ENTRIES = 16;
+    // Links are dropped a bit before they really expire, playback needs some time too.
+    private final static long EXPIRE_MARGIN_MS = 10 * 60 * 1000;
+
+    private static final Pattern patExpire = Pattern.compile("(?:[?&]expire=|/expire/)(\\d+)");
+
+    private static StreamUrlCache instance;
+
+    private final File contextCacheDir;
+    private final File cacheDir;
+    private final Map<String, CacheEntry> memoryCache = new LinkedHashMap<String, CacheEntry>(MAX_MEMORY_ENTRIES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+            return size() > MAX_MEMORY_ENTRIES;
+        }
+    };
+
+    private final AtomicInteger hitCount = new AtomicInteger();
+    private final AtomicInteger missCount = new AtomicInteger();
+
+    private StreamUrlCache(File contextCacheDir) {
+        this.contextCacheDir = contextCacheDir;
+        this.cacheDir = new File(contextCacheDir, CACHE_DIR_NAME);
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            Log.e(LOG_TAG, "Could not create cache directory " + cacheDir);
+        }
+    }
+
+    /**
+     * @return the cache in the cache dir of the context, a context with another cache dir
+     * gets a cache of its own
+     */
+    public static synchronized StreamUrlCache getInstance(Context context) {
+        File contextCacheDir = context.getCacheDir();
+        if (instance == null || !instance.contextCacheDir.equals(contextCacheDir)) {
+            instance = new StreamUrlCache(contextCacheDir);
+        }
+        return instance;
+    }
+
+    /**
+     * Number of lookups answered from the cache since the process started.
+     */
+    public int getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Number of lookups that had to fall back to a full extraction.
+     */
+    public int getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Removes all cached entries from memory and disk.
+     */
+    public synchronized void clear() {
+        memoryCache.clear();
+        File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    static String buildKey(String videoId, boolean parseDashManifest, boolean includeWebM) {
+        return videoId + "_" + (parseDashManifest ? "d" : "") + (includeWebM ? "w" : "");
+    }
+
+    /**
+     * @return the cached entry or null if there is none or it has expired
+     */
+    synchronized CacheEntry get(String key) {
+        long now = System.currentTimeMillis();
+        CacheEntry entry = memoryCache.get(key);
+        if (entry == null) {
+            entry = readEntry(key);
+            if (entry != null)
+                memoryCache.put(key, entry);
+        }
+        if (entry != null && entry.expiresAt - EXPIRE_MARGIN_MS <= now) {
+            memoryCache.remove(key);
+            new File(cacheDir, key).delete();
+            entry = null;
+        }
+
+        if (entry == null) {
+            missCount.incrementAndGet();
+            ExtractionMetrics.getInstance().increment(ExtractionMetrics.COUNTER_URL_CACHE_MISS);
+            return null;
+        }
+        hitCount.incrementAndGet();
+        ExtractionMetrics.getInstance().increment(ExtractionMetrics.COUNTER_URL_CACHE_HIT);
+        if (YouTubeExtractor.LOGGING)
+            Log.d(LOG_TAG, "Cache hit for " + key);
+        return entry;
+    }
+
+    synchronized void put(String key, SparseArray<YtFile> ytFiles, VideoMeta videoMeta) {
+        if (ytFiles == null || ytFiles.size() == 0 || videoMeta == null || videoMeta.isLiveStream())
+            return;
+
+        long expiresAt = Long.MAX_VALUE;
+        for (int i = 0; i < ytFiles.size(); i++) {
+            Matcher mat = patExpire.matcher(ytFiles.valueAt(i).getUrl());
+            if (!mat.find()) {
+                // We can't tell how long this link stays valid
+                return;
+            }
+            expiresAt = Math.min(expiresAt, Long.parseLong(mat.group(1)) * 1000);
+        }
+
+        CacheEntry entry = new CacheEntry(expiresAt, ytFiles.clone(), videoMeta);
+        memoryCache.put(key, entry);
+        writeEntry(key, entry);
+        trimToSize();
+    }
+
+    private CacheEntry readEntry(String key) {
+        File file = new File(cacheDir, key);
+        if (!file.exists())
+            return null;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != FILE_VERSION)
+                return null;
+            long expiresAt = in.readLong();
+            VideoMeta videoMeta = new VideoMeta(readString(in), readString(in), readString(in),
+                    readString(in), in.readLong(), in.readLong(), in.readBoolean());
+            int size = in.readInt();
+            SparseArray<YtFile> ytFiles = new SparseArray<>(size);
+            for (int i = 0; i < size; i++) {
+                int itag = in.readInt();
+                String url = in.readUTF();
+                Format format = YouTubeExtractor.getFormat(itag);
+                if (format != null)
+                    ytFiles.put(itag, new YtFile(format, url));
+            }
+            return new CacheEntry(expiresAt, ytFiles, videoMeta);
+        } catch (IOException e) {
+            if (YouTubeExtractor.LOGGING)
+                Log.d(LOG_TAG, "Dropping unreadable cache entry " + key);
+            file.delete();
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void writeEntry(String key, CacheEntry entry) {
+        File file = new File(cacheDir, key);
+        File tmpFile = new File(cacheDir, key + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(FILE_VERSION);
+            out.writeLong(entry.expiresAt);
+            VideoMeta videoMeta = entry.videoMeta;
+            writeString(out, videoMeta.getVideoId());
+            writeString(out, videoMeta.getTitle());
+            writeString(out, videoMeta.getAuthor());
+            writeString(out, videoMeta.getChannelId());
+            out.writeLong(videoMeta.getVideoLength());
+            out.writeLong(videoMeta.getViewCount());
+            out.writeBoolean(videoMeta.isLiveStream());
+            out.writeInt(entry.ytFiles.size());
+            for (int i = 0; i < entry.ytFiles.size(); i++) {
+                out.writeInt(entry.ytFiles.keyAt(i));
+                out.writeUTF(entry.ytFiles.valueAt(i).getUrl());
+            }
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(file)) {
+                tmpFile.delete();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            tmpFile.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void trimToSize() {
+        File[] files = cacheDir.listFiles();
+        if (files == null || files.length <= MAX_DISK_ENTRIES)
+            return;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long diff = lhs.lastModified() - rhs.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+        for (int i = 0; i < files.length - MAX_DISK_ENTRIES; i++) {
+            memoryCache.remove(files[i].getName());
+            files[i].delete();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null)
+            out.writeUTF(value);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    static final class CacheEntry {
+
+        private final long expiresAt;
+        private final SparseArray<YtFile> ytFiles;
+        private final VideoMeta videoMeta;
+
+        private CacheEntry(long expiresAt, SparseArray<YtFile> ytFiles, VideoMeta videoMeta) {
+            this.expiresAt = expiresAt;
+            this.ytFiles = ytFiles;
+            this.videoMeta = videoMeta;
+        }
+
+        /**
+         * A copy of the cached files, callers are free to modify it.
+         */
+        SparseArray<YtFile> getYtFiles() {
+            return ytFiles.clone();
+        }
+
+        VideoMeta getVideoMeta() {
+            return videoMeta;
+        }
+    }
+}
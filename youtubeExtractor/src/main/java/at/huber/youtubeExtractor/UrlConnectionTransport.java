@@ -0,0 +1,155 @@
+package at.huber.youtubeExtractor;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The default {@link HttpTransport} on top of {@link HttpURLConnection}.
+ * <p/>
+ * The platform keeps idle connections in a pool per host, but only takes a connection back
+ * if its response was read to the end and it was not disconnected. Closing a response body
+ * therefore reads what is left of it, unless that is more than {@link #MAX_DRAIN_BYTES}.
+ * The extractor stops reading most responses early, the rest of the video info is small
+ * while the rest of a watch page is not worth downloading just to save a handshake.
+ */
+final class UrlConnectionTransport extends HttpTransport {
+
+    private final static int CONNECT_TIMEOUT_MS = 10000;
+    private final static int READ_TIMEOUT_MS = 15000;
+    private final static int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private static long elapsedMs() {
+        return System.nanoTime() / 1000000;
+    }
+
+    @Override
+    public InputStream open(String url, int readTimeoutMs) throws IOException {
+        long start = elapsedMs();
+        HttpURLConnection urlConnection = (HttpURLConnection) new URL(url).openConnection();
+        urlConnection.setRequestProperty("User-Agent", YouTubeExtractor.USER_AGENT);
+        // Asking for gzip ourselves turns off the transparent decompression of the platform,
+        // so the response is decompressed the same way on every version
+        urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+        urlConnection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        urlConnection.setReadTimeout(readTimeoutMs > 0 ? readTimeoutMs : READ_TIMEOUT_MS);
+
+        int responseCode = -1;
+        InputStream raw = null;
+        try {
+            responseCode = urlConnection.getResponseCode();
+            raw = urlConnection.getInputStream();
+            long responseMs = elapsedMs() - start;
+            InputStream body = "gzip".equalsIgnoreCase(urlConnection.getContentEncoding())
+                    ? new GZIPInputStream(raw) : raw;
+            return new ResponseStream(body, raw, urlConnection, url, responseCode, start, responseMs);
+        } catch (IOException e) {
+            if (raw != null)
+                raw.close();
+            urlConnection.disconnect();
+            long totalMs = elapsedMs() - start;
+            notifyRequestFinished(url, responseCode, totalMs, totalMs, 0);
+            throw e;
+        }
+    }
+
+    @Override
+    public void abort(InputStream in) {
+        if (in instanceof ResponseStream) {
+            ((ResponseStream) in).abort();
+        } else {
+            super.abort(in);
+        }
+    }
+
+    private static final class ResponseStream extends FilterInputStream {
+
+        private final InputStream raw;
+        private final HttpURLConnection urlConnection;
+        private final String url;
+        private final int responseCode;
+        private final long start;
+        private final long responseMs;
+        private long bytes;
+        private boolean closed;
+        private volatile boolean aborted;
+
+        private ResponseStream(InputStream body, InputStream raw, HttpURLConnection urlConnection,
+                               String url, int responseCode, long start, long responseMs) {
+            super(body);
+            this.raw = raw;
+            this.urlConnection = urlConnection;
+            this.url = url;
+            this.responseCode = responseCode;
+            this.start = start;
+            this.responseMs = responseMs;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1)
+                bytes++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0)
+                bytes += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long skipped = super.skip(count);
+            bytes += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            try {
+                if (aborted || !drain())
+                    urlConnection.disconnect();
+                super.close();
+            } finally {
+                notifyRequestFinished(url, responseCode, responseMs,
+                        elapsedMs() - start, bytes);
+            }
+        }
+
+        /**
+         * Closes the socket under the reading thread, the connection can't be reused.
+         */
+        private void abort() {
+            aborted = true;
+            urlConnection.disconnect();
+        }
+
+        /**
+         * @return true if the response was read to the end
+         */
+        private boolean drain() {
+            byte[] buffer = new byte[4096];
+            try {
+                for (int drained = 0; drained < MAX_DRAIN_BYTES; ) {
+                    int read = raw.read(buffer);
+                    if (read == -1)
+                        return true;
+                    drained += read;
+                }
+            } catch (IOException e) {
+                // The connection is broken anyway
+            }
+            return false;
+        }
+    }
+}
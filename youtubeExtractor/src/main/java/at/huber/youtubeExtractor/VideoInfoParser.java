@@ -0,0 +1,136 @@
+package at.huber.youtubeExtractor;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Single pass tokenizer for the url encoded <code>get_video_info</code> response.
+ * <p/>
+ * The response is read in small chunks and only the values of the requested keys are kept,
+ * everything else (the player response, ad parameters, ...) is skipped without ever being
+ * copied into a string. The kept values are url decoded exactly once.
+ */
+final class VideoInfoParser {
+
+    static final String KEY_FMT_STREAM_MAP = "url_encoded_fmt_stream_map";
+    static final String KEY_ADAPTIVE_FMTS = "adaptive_fmts";
+    static final String KEY_DASH_MPD = "dashmpd";
+    static final String KEY_USE_CIPHER_SIGNATURE = "use_cipher_signature";
+    static final String KEY_HLSVP = "hlsvp";
+    static final String KEY_TITLE = "title";
+    static final String KEY_AUTHOR = "author";
+    static final String KEY_CHANNEL_ID = "ucid";
+    static final String KEY_LENGTH = "length_seconds";
+    static final String KEY_VIEW_COUNT = "view_count";
+
+    static final Set<String> VIDEO_INFO_KEYS = new HashSet<>(Arrays.asList(KEY_FMT_STREAM_MAP,
+            KEY_ADAPTIVE_FMTS, KEY_DASH_MPD, KEY_USE_CIPHER_SIGNATURE, KEY_HLSVP, KEY_TITLE,
+            KEY_AUTHOR, KEY_CHANNEL_ID, KEY_LENGTH, KEY_VIEW_COUNT));
+
+    private static final int BUFFER_SIZE = 4096;
+    // No key we are interested in is longer than this
+    private static final int MAX_KEY_LENGTH = 32;
+
+    private VideoInfoParser() {
+    }
+
+    /**
+     * Reads the response up to the end of the stream or the first line break.
+     *
+     * @param keys the keys whose values should be kept
+     * @return the url decoded values of the requested keys which were found
+     */
+    static Map<String, String> parse(Reader reader, Set<String> keys) throws IOException {
+        Map<String, String> values = new HashMap<>();
+        char[] buffer = new char[BUFFER_SIZE];
+        StringBuilder key = new StringBuilder(MAX_KEY_LENGTH);
+        StringBuilder value = null;
+        boolean inValue = false;
+        boolean skipping = false;
+
+        int read;
+        loop:
+        while ((read = reader.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                char c = buffer[i];
+                if (c == '\n' || c == '\r') {
+                    break loop;
+                }
+                if (c == '&') {
+                    if (value != null)
+                        values.put(key.toString(), value.toString());
+                    key.setLength(0);
+                    value = null;
+                    inValue = false;
+                    skipping = false;
+                } else if (inValue) {
+                    if (value != null)
+                        value.append(c);
+                } else if (c == '=') {
+                    inValue = true;
+                    if (!skipping && keys.contains(key.toString()))
+                        value = new StringBuilder();
+                } else if (!skipping) {
+                    if (key.length() == MAX_KEY_LENGTH) {
+                        skipping = true;
+                    } else {
+                        key.append(c);
+                    }
+                }
+            }
+        }
+        if (value != null)
+            values.put(key.toString(), value.toString());
+
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            entry.setValue(decode(entry.getValue()));
+        }
+        return values;
+    }
+
+    /**
+     * Splits a decoded <code>url_encoded_fmt_stream_map</code> or <code>adaptive_fmts</code>
+     * value into its streams.
+     *
+     * @return one map of the still url encoded stream parameters per stream
+     */
+    static List<Map<String, String>> parseStreams(String fmts) {
+        List<Map<String, String>> streams = new ArrayList<>();
+        if (fmts == null || fmts.length() == 0)
+            return streams;
+
+        Map<String, String> stream = new HashMap<>();
+        int start = 0;
+        int length = fmts.length();
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? fmts.charAt(i) : ',';
+            if (c == '&' || c == ',') {
+                int eq = fmts.indexOf('=', start);
+                if (eq >= 0 && eq < i)
+                    stream.put(fmts.substring(start, eq), fmts.substring(eq + 1, i));
+                start = i + 1;
+                if (c == ',' && !stream.isEmpty()) {
+                    streams.add(stream);
+                    stream = new HashMap<>();
+                }
+            }
+        }
+        return streams;
+    }
+
+    static String decode(String value) throws UnsupportedEncodingException {
+        // Most values need no decoding at all
+        if (value.indexOf('%') < 0 && value.indexOf('+') < 0)
+            return value;
+        return URLDecoder.decode(value, "UTF-8");
+    }
+}
@@ -2,7 +2,7 @@ package at.huber.youtubeExtractor;
 
 public class YtFile {
 
-    private Format format;
+    private final Format format;
     private String url = "";
 
     YtFile(Format format, String url) {
@@ -10,6 +10,13 @@ public class YtFile {
         this.url = url;
     }
 
+    /**
+     * Adds a query parameter to the url, while the file is still being extracted.
+     */
+    void appendToUrl(String name, String value) {
+        url = url + "&" + name + "=" + value;
+    }
+
     /**
      * The url to download the file.
      */
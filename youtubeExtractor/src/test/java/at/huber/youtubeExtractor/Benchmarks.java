@@ -0,0 +1,88 @@
+package at.huber.youtubeExtractor;
+
+import org.junit.Assume;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Timing harness shared by the benchmarks of the unit tests.
+ * <p/>
+ * The benchmarks are skipped unless the <code>benchmark</code> system property is set, so the
+ * unit tests neither depend on the speed of the machine nor print anything:
+ * <code>./gradlew :youtubeExtractor:testDebugUnitTest -Dbenchmark=true</code>
+ */
+final class Benchmarks {
+
+    static final String PROPERTY = "benchmark";
+
+    interface Operation {
+        void run() throws Exception;
+    }
+
+    static final class Result {
+
+        final long nanosPerOp;
+        // -1 if the JVM can't count the allocated bytes
+        final long bytesPerOp;
+
+        private Result(long nanosPerOp, long bytesPerOp) {
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return nanosPerOp / 1000 + " us/op" + (bytesPerOp >= 0 ? ", " + bytesPerOp + " bytes/op" : "");
+        }
+    }
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Skips the calling test unless the benchmarks are enabled.
+     */
+    static void assumeEnabled() {
+        Assume.assumeTrue("run with -D" + PROPERTY + "=true", Boolean.getBoolean(PROPERTY));
+    }
+
+    static void warmUp(int iterations, Operation... operations) throws Exception {
+        for (int i = 0; i < iterations; i++) {
+            for (Operation operation : operations) {
+                operation.run();
+            }
+        }
+    }
+
+    /**
+     * Runs the operation <code>iterations</code> times on the calling thread.
+     *
+     * @return the average time and allocation of one run
+     */
+    static Result measure(int iterations, Operation operation) throws Exception {
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            operation.run();
+        }
+        long nanos = System.nanoTime() - start;
+        long allocated = allocatedBefore >= 0 ? allocatedBytes() - allocatedBefore : -1;
+        return new Result(nanos / iterations, allocated >= 0 ? allocated / iterations : -1);
+    }
+
+    /**
+     * Prints the result of an enabled benchmark.
+     */
+    static void report(String name, Result result) {
+        System.out.println(name + ": " + result);
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
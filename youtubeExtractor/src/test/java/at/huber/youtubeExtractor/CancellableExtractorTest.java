@@ -0,0 +1,181 @@
+package at.huber.youtubeExtractor;
+
+import android.util.SparseArray;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Cancels extractions of {@link CancellableExtractor} while their requests are in flight.
+ * <p/>
+ * Runs on the JVM: <code>./gradlew :youtubeExtractor:testDebugUnitTest</code>
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class CancellableExtractorTest {
+
+    private static final String PLAIN_VIDEO_ID = "zGDzdps75ns";
+    private static final String STALLED_VIDEO_ID = "sTaLLedVid1";
+
+    private ReplayTransport transport;
+    private GatedTransport gatedTransport;
+    private CancellableExtractor extractor;
+
+    @Before
+    public void setUp() throws IOException {
+        transport = new ReplayTransport()
+                .record("https://www.youtube.com/get_video_info?video_id=" + PLAIN_VIDEO_ID + "&", "get_video_info.txt")
+                .record("https://manifest.googlevideo.com/api/manifest/dash/", "dash_manifest.mpd")
+                .stall("https://www.youtube.com/get_video_info?video_id=" + STALLED_VIDEO_ID + "&");
+        gatedTransport = new GatedTransport(transport);
+        HttpTransport.set(gatedTransport);
+        extractor = new CancellableExtractor(RuntimeEnvironment.application);
+        extractor.setParseDashManifest(true);
+        extractor.setUseStreamUrlCache(false);
+    }
+
+    @After
+    public void tearDown() {
+        HttpTransport.set(null);
+    }
+
+    @Test
+    public void completesExtraction() throws Exception {
+        ExtractionFuture future = extractor.extract(PLAIN_VIDEO_ID, null);
+        SparseArray<YtFile> ytFiles = future.get(5, TimeUnit.SECONDS);
+
+        assertNotNull(ytFiles);
+        assertNotNull(ytFiles.get(140));
+        assertEquals(PLAIN_VIDEO_ID, future.getVideoId());
+        assertEquals("Fixture Artist", future.getVideoMeta().getAuthor());
+        assertFalse(future.isTimedOut());
+    }
+
+    @Test
+    public void cancelAbortsRequestInFlight() throws Exception {
+        ExtractionFuture stalled = extractor.extract(STALLED_VIDEO_ID, null);
+        assertTrue(transport.awaitStalledRequest(5000));
+
+        assertTrue(stalled.cancel(true));
+        assertEquals(1, transport.getAbortedCount());
+        assertTrue(stalled.isCancelled());
+        try {
+            stalled.get();
+            fail("cancelled extraction returned a result");
+        } catch (CancellationException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void sharesConcurrentExtraction() throws Exception {
+        gatedTransport.close();
+        ExtractionFuture first = extractor.extract(PLAIN_VIDEO_ID, null);
+        ExtractionFuture second = extractor.extract("https://www.youtube.com/watch?v=" + PLAIN_VIDEO_ID, null);
+        awaitMembers(2);
+        gatedTransport.open();
+
+        SparseArray<YtFile> ytFiles = first.get(5, TimeUnit.SECONDS);
+        assertNotNull(ytFiles);
+        assertTrue(ytFiles == second.get(5, TimeUnit.SECONDS));
+        assertEquals("Fixture Artist", second.getVideoMeta().getAuthor());
+        assertEquals(1, countVideoInfoRequests(transport.takeRequests()));
+    }
+
+    @Test
+    public void sharedExtractionSurvivesCancelOfOneCaller() throws Exception {
+        gatedTransport.close();
+        ExtractionFuture first = extractor.extract(PLAIN_VIDEO_ID, null);
+        ExtractionFuture second = extractor.extract(PLAIN_VIDEO_ID, null);
+        awaitMembers(2);
+
+        assertTrue(first.cancel(true));
+        gatedTransport.open();
+
+        assertNotNull(second.get(5, TimeUnit.SECONDS));
+        assertTrue(first.isCancelled());
+        assertEquals(1, countVideoInfoRequests(transport.takeRequests()));
+    }
+
+    @Test
+    public void failsOnWrongLink() throws Exception {
+        ExtractionFuture future = extractor.extract("not a link", null);
+
+        assertTrue(future.isDone());
+        assertNull(future.get());
+    }
+
+    private void awaitMembers(int count) throws InterruptedException {
+        String key = new StreamExtraction(null, PLAIN_VIDEO_ID, true, true, false).getKey();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (SingleFlight.getMemberCount(key) < count) {
+            if (System.currentTimeMillis() > deadline)
+                fail("extractions did not join");
+            Thread.sleep(5);
+        }
+    }
+
+    private static int countVideoInfoRequests(List<String> requests) {
+        int count = 0;
+        for (String url : requests) {
+            if (url.contains("/get_video_info?"))
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Holds back all requests while it is closed.
+     */
+    private static final class GatedTransport extends HttpTransport {
+
+        private final HttpTransport delegate;
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+
+        private GatedTransport(HttpTransport delegate) {
+            this.delegate = delegate;
+        }
+
+        private void close() {
+            gate = new CountDownLatch(1);
+        }
+
+        private void open() {
+            gate.countDown();
+        }
+
+        @Override
+        public InputStream open(String url, int readTimeoutMs) throws IOException {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return delegate.open(url, readTimeoutMs);
+        }
+
+        @Override
+        public void abort(InputStream in) {
+            delegate.abort(in);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package at.huber.youtubeExtractor;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Parses dash manifests with the pull parser Android gives out, which processes namespaces.
+ * <p/>
+ * Runs on the JVM: <code>./gradlew :youtubeExtractor:testDebugUnitTest</code>
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class DashManifestParserTest {
+
+    private final List<Integer> itags = new ArrayList<>();
+    private final List<String> urls = new ArrayList<>();
+
+    private final DashManifestParser.Listener listener = new DashManifestParser.Listener() {
+        @Override
+        public void onStream(int itag, String url) {
+            itags.add(itag);
+            urls.add(url);
+        }
+    };
+
+    @Test
+    public void reportsCompleteStreamsOfRecordedManifest() throws IOException {
+        DashManifestParser.parse(new ByteArrayInputStream(
+                ReplayTransport.readResource("dash_manifest.mpd")), listener);
+
+        // 299 is segmented and has no content length
+        assertEquals(Arrays.asList(139, 140, 251, 137, 264, 999, 248), itags);
+        assertTrue(urls.get(1).startsWith("https://r4---sn-hpa7kn7s.googlevideo.com/videoplayback/"));
+        assertTrue(urls.get(1).contains("/itag/140/"));
+    }
+
+    @Test
+    public void takesItagFromUrlAndResolvesEntities() throws IOException {
+        String manifest = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<MPD xmlns=\"urn:mpeg:DASH:schema:MPD:2011\" xmlns:yt=\"http://youtube.com/yt/2012/10/10\">"
+                + "<Representation id=\"audio\"><BaseURL yt:contentLength=\"10\">"
+                + "https://host/videoplayback?itag=140&amp;clen=10</BaseURL></Representation>"
+                + "<Representation id=\"22\"><BaseURL>https://host/segmented</BaseURL></Representation>"
+                + "<Representation id=\"18\"><BaseURL contentLength=\"10\">https://host/other</BaseURL>"
+                + "</Representation></MPD>";
+        DashManifestParser.parse(new ByteArrayInputStream(manifest.getBytes("UTF-8")), listener);
+
+        // Only the content length of the yt namespace counts
+        assertEquals(Arrays.asList(140), itags);
+        assertEquals("https://host/videoplayback?itag=140&clen=10", urls.get(0));
+    }
+}
@@ -0,0 +1,252 @@
+package at.huber.youtubeExtractor;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.util.SparseArray;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs whole extractions against recorded responses: the <code>get_video_info</code> of a
+ * plain and of an enciphered video, the watch page and player js the latter needs and the
+ * dash manifest both of them link to. Nothing goes to the network, so the results and the
+ * timings only depend on the extractor itself.
+ * <p/>
+ * Runs on the JVM: <code>./gradlew :youtubeExtractor:testDebugUnitTest</code>, the benchmark
+ * only with <code>-Dbenchmark=true</code>, see {@link Benchmarks}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class OfflineExtractionTest {
+
+    private static final String PLAIN_VIDEO_ID = "zGDzdps75ns";
+    private static final String CIPHER_VIDEO_ID = "cIpHeRvid01";
+
+    private static final int WARMUP_ITERATIONS = 50;
+    private static final int MEASURED_ITERATIONS = 200;
+
+    private File cacheDir;
+    private Context context;
+    private ReplayTransport transport;
+
+    @Before
+    public void setUp() throws IOException {
+        // The caches of the extractor belong to the cache dir, a new one leaves nothing of
+        // the player or the stream urls over from other tests
+        cacheDir = File.createTempFile("extractor", "cache");
+        assertTrue(cacheDir.delete() && cacheDir.mkdir());
+        context = new ContextWrapper(RuntimeEnvironment.application) {
+            @Override
+            public File getCacheDir() {
+                return cacheDir;
+            }
+        };
+        transport = new ReplayTransport()
+                .record("https://www.youtube.com/get_video_info?video_id=" + PLAIN_VIDEO_ID + "&", "get_video_info.txt")
+                .record("https://www.youtube.com/get_video_info?video_id=" + CIPHER_VIDEO_ID + "&", "get_video_info_cipher.txt")
+                .record("https://www.youtube.com/watch?v=" + CIPHER_VIDEO_ID, "watch_page_cipher.html")
+                .record("https://s.ytimg.com/yts/jsbin/player-vflFixture/en_US/base.js", "player_cipher.js")
+                .record("https://manifest.googlevideo.com/api/manifest/dash/", "dash_manifest.mpd");
+        HttpTransport.set(transport);
+    }
+
+    @After
+    public void tearDown() {
+        HttpTransport.set(null);
+        delete(cacheDir);
+    }
+
+    @Test
+    public void extractsPlainVideo() throws Exception {
+        StreamExtraction extraction = new StreamExtraction(context, PLAIN_VIDEO_ID, true, true, false);
+        SparseArray<YtFile> ytFiles = extraction.run();
+
+        assertNotNull(ytFiles);
+        assertItags(ytFiles, 17, 18, 22, 36, 43, 133, 134, 135, 136, 139, 140, 160, 171, 242, 243,
+                244, 247, 248, 249, 250, 251, 264, 278);
+
+        YtFile hd = ytFiles.get(22);
+        assertEquals(22, hd.getFormat().getItag());
+        assertEquals("mp4", hd.getFormat().getExt());
+        assertEquals(720, hd.getFormat().getHeight());
+        assertFalse(hd.getFormat().isDashContainer());
+        assertTrue(hd.getFormat().matches(Format.HAS_AUDIO | Format.HAS_VIDEO | Format.VIDEO_H264 | Format.AUDIO_AAC));
+        assertFalse(hd.getFormat().matches(Format.DASH));
+        assertTrue(hd.getUrl().startsWith("https://r4---sn-hpa7kn7s.googlevideo.com/videoplayback?"));
+        assertTrue(hd.getUrl().contains("&itag=22&"));
+
+        // The dash manifest replaces the streams it lists as well
+        YtFile audio = ytFiles.get(140);
+        assertEquals("m4a", audio.getFormat().getExt());
+        assertEquals(128, audio.getFormat().getAudioBitrate());
+        assertEquals(-1, audio.getFormat().getHeight());
+        assertEquals(Format.ACodec.AAC, audio.getFormat().getAudioCodec());
+        assertEquals(Format.VCodec.NONE, audio.getFormat().getVideoCodec());
+        assertTrue(audio.getFormat().matches(Format.AUDIO_ONLY | Format.DASH | Format.AUDIO_AAC | Format.AUDIO_HQ));
+        assertFalse(audio.getFormat().matches(Format.HAS_VIDEO));
+        assertTrue(audio.getUrl().contains("/itag/140/"));
+        assertTrue(audio.getUrl().contains("/mime/audio%2Fmp4/"));
+        assertTrue(audio.getUrl().contains("/sparams/clen%2Cdur%2Cei"));
+        assertTrue(ytFiles.get(264).getFormat().isDashContainer());
+        assertEquals(1440, ytFiles.get(264).getFormat().getHeight());
+
+        VideoMeta videoMeta = extraction.getVideoMeta();
+        assertEquals(PLAIN_VIDEO_ID, videoMeta.getVideoId());
+        assertEquals("Fixture Artist", videoMeta.getAuthor());
+        assertEquals(213, videoMeta.getVideoLength());
+
+        List<String> requests = transport.takeRequests();
+        assertEquals(2, requests.size());
+        assertTrue(requests.get(1).endsWith("/signature/ABC.DEF/key/yt6"));
+    }
+
+    @Test
+    public void skipsWebMWhenNotIncluded() throws Exception {
+        SparseArray<YtFile> ytFiles = new StreamExtraction(context, PLAIN_VIDEO_ID, true, false, false).run();
+
+        assertNotNull(ytFiles);
+        assertItags(ytFiles, 17, 18, 22, 36, 133, 134, 135, 136, 139, 140, 160, 264);
+    }
+
+    @Test
+    public void skipsDashManifestWhenNotRequested() throws Exception {
+        SparseArray<YtFile> ytFiles = new StreamExtraction(context, PLAIN_VIDEO_ID, false, true, false).run();
+
+        assertNotNull(ytFiles);
+        assertNull(ytFiles.get(139));
+        assertEquals(21, ytFiles.size());
+        assertEquals(1, transport.takeRequests().size());
+    }
+
+    @Test
+    public void extractsEncipheredVideo() throws Exception {
+        StreamExtraction extraction = new StreamExtraction(context, CIPHER_VIDEO_ID, true, true, false);
+        SparseArray<YtFile> ytFiles = extraction.run();
+
+        assertNotNull(ytFiles);
+        assertEquals("player-vflFixture/en_US/base.js", extraction.getPlayerJsFileName());
+        assertItags(ytFiles, 17, 18, 22, 36, 43, 136, 139, 140, 171, 248, 251, 264);
+        // 137 is listed but no longer part of the format map
+        assertNull(ytFiles.get(137));
+
+        assertTrue(ytFiles.get(22).getUrl().endsWith(
+                "&signature=18FA71D4915BC0930AE7DAFBCD6289EEECC5AC1.A25A066B42AEC6A20DF7A3E096270A124A53CCE"));
+        assertTrue(ytFiles.get(136).getUrl().endsWith(
+                "&signature=C7193C787E75BB810A920335970EBE3C72A0210.13A2A13151C68071576E206FAD20920028AC7C4"));
+        assertTrue(ytFiles.get(171).getUrl().endsWith(
+                "&signature=C5AB0814E0D61D7EE747EBE725ADCFCCC629E51.2F56DB0A63C793A173EECD6B80E238E5B867D3E"));
+        // Streams from the signed dash manifest need no signature of their own
+        assertTrue(ytFiles.get(140).getUrl().contains("/itag/140/"));
+
+        String dashRequest = null;
+        for (String url : transport.takeRequests()) {
+            if (url.startsWith("https://manifest.googlevideo.com/"))
+                dashRequest = url;
+        }
+        assertNotNull(dashRequest);
+        assertTrue(dashRequest.contains("/signature/C58FB34845257065FEC25F820D929274B3FE1F1.0B7E7BF7121DD22615220BFF02A2A0EE4CF433/"));
+        assertFalse(dashRequest.contains("/s/"));
+    }
+
+    @Test
+    public void warmsUpDecipherFunctions() throws Exception {
+        assertTrue(DecipherWarmUp.warmUp(context, CIPHER_VIDEO_ID));
+        assertTrue("player js not loaded by the warm-up",
+                transport.takeRequests().contains("https://s.ytimg.com/yts/jsbin/player-vflFixture/en_US/base.js"));
+
+        assertNotNull(new StreamExtraction(context, CIPHER_VIDEO_ID, true, true, false).run());
+        for (String url : transport.takeRequests()) {
+            assertFalse("player js loaded again: " + url, url.startsWith("https://s.ytimg.com/"));
+        }
+    }
+
+    @Test
+    public void recordsPhaseTimings() throws Exception {
+        ExtractionMetrics metrics = ExtractionMetrics.getInstance();
+        metrics.reset();
+        assertNotNull(new StreamExtraction(context, CIPHER_VIDEO_ID, true, true, false).run());
+
+        assertEquals(1, metrics.getTimingCount(ExtractionMetrics.PHASE_VIDEO_INFO));
+        assertEquals(1, metrics.getTimingCount(ExtractionMetrics.PHASE_WATCH_PAGE));
+        assertEquals(1, metrics.getTimingCount(ExtractionMetrics.PHASE_STREAM_PARSING));
+        assertEquals(1, metrics.getTimingCount(ExtractionMetrics.PHASE_DASH));
+        // The recorded player only uses operations the transform knows
+        assertEquals(1, metrics.getTimingCount(ExtractionMetrics.PHASE_DECIPHER));
+        assertEquals(0, metrics.getCount(ExtractionMetrics.COUNTER_WEBVIEW_FALLBACK));
+        assertEquals(0, metrics.getCount(ExtractionMetrics.COUNTER_DASH_RETRY));
+        assertTrue(metrics.dump().contains(ExtractionMetrics.PHASE_WATCH_PAGE + ": 1, "));
+
+        metrics.reset();
+        for (long ms : new long[]{0, 3, 3, 5, 9, 40, 40, 70, 300, 5000}) {
+            metrics.record(ExtractionMetrics.PHASE_TOTAL, ms);
+        }
+        assertEquals(10, metrics.getTimingCount(ExtractionMetrics.PHASE_TOTAL));
+        assertEquals(16, metrics.getPercentile(ExtractionMetrics.PHASE_TOTAL, 50));
+        assertEquals(512, metrics.getPercentile(ExtractionMetrics.PHASE_TOTAL, 90));
+        assertEquals(5000, metrics.getPercentile(ExtractionMetrics.PHASE_TOTAL, 100));
+        assertEquals(-1, metrics.getPercentile(ExtractionMetrics.PHASE_DASH, 50));
+    }
+
+    @Test
+    public void failsWithoutRecording() throws Exception {
+        assertNull(new StreamExtraction(context, "unrecorded1", true, true, false).run());
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        Benchmarks.assumeEnabled();
+        for (final String videoId : new String[]{PLAIN_VIDEO_ID, CIPHER_VIDEO_ID}) {
+            Benchmarks.Operation extraction = new Benchmarks.Operation() {
+                @Override
+                public void run() throws Exception {
+                    assertNotNull(new StreamExtraction(context, videoId, true, true, false).run());
+                }
+            };
+            Benchmarks.warmUp(WARMUP_ITERATIONS, extraction);
+            transport.takeRequests();
+
+            Benchmarks.Result result = Benchmarks.measure(MEASURED_ITERATIONS, extraction);
+            int requests = transport.takeRequests().size() / MEASURED_ITERATIONS;
+            Benchmarks.report("extraction of " + videoId + ", " + requests + " requests/op", result);
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static void assertItags(SparseArray<YtFile> ytFiles, int... itags) {
+        StringBuilder found = new StringBuilder();
+        for (int i = 0; i < ytFiles.size(); i++) {
+            found.append(ytFiles.keyAt(i)).append(' ');
+        }
+        assertEquals("found " + found, itags.length, ytFiles.size());
+        for (int itag : itags) {
+            YtFile ytFile = ytFiles.get(itag);
+            assertNotNull("missing itag " + itag, ytFile);
+            assertEquals(itag, ytFile.getFormat().getItag());
+        }
+    }
+}
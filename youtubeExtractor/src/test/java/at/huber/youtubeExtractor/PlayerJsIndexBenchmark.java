@@ -0,0 +1,211 @@
+package at.huber.youtubeExtractor;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Compares the extraction of the decipher functions through {@link PlayerJsIndex} with the
+ * former approach of one regex and brace count per function over the whole file.
+ * <p/>
+ * The recorded player js is padded to the size of a real player with generated code, so the
+ * functions are found late in the file as they are in a real one.
+ * <p/>
+ * Runs on the JVM: <code>./gradlew :youtubeExtractor:testDebugUnitTest</code>, the benchmark
+ * only with <code>-Dbenchmark=true</code>, see {@link Benchmarks}.
+ */
+public class PlayerJsIndexBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int MEASURED_ITERATIONS = 50;
+    private static final int PLAYER_SIZE = 1024 * 1024;
+
+    private static final Pattern patVariableFunction = Pattern.compile("(\\{|;| |=)([a-zA-Z$][a-zA-Z0-9$]{0,2})\\.([a-zA-Z$][a-zA-Z0-9$]{0,2})\\(");
+    private static final Pattern patFunction = Pattern.compile("(\\{|;| |=)([a-zA-Z$_][a-zA-Z0-9$]{0,2})\\(");
+    private static final Pattern patSignatureDecFunction = Pattern.compile("\\(\"signature\",(.{1,3}?)\\(.{1,10}?\\)");
+
+    private static final String EXPECTED_FUNCTIONS = "var Xx=function(a){a=a.split(\"\");Yy.ef(a,7);"
+            + "Yy.cd(a,31);Yy.ab(a,2);Yy.ef(a,45);Yy.cd(a,8);Yy.ab(a,1);return a.join(\"\")};"
+            + "var Yy={ab:function(a,b){a.splice(0,b)},cd:function(a){a.reverse()},\n"
+            + "ef:function(a,b){var c=a[0];a[0]=a[b%a.length];a[b%a.length]=c}};";
+
+    private static String recordedPlayer;
+    private static String player;
+
+    @BeforeClass
+    public static void loadFixture() throws IOException {
+        recordedPlayer = readPlayerJs(new String(ReplayTransport.readResource("player_cipher.js"), "UTF-8"));
+        player = generateCode(PLAYER_SIZE - recordedPlayer.length()) + recordedPlayer;
+    }
+
+    @Test
+    public void extractsDecipherFunctions() {
+        assertEquals(EXPECTED_FUNCTIONS, extractWithIndex(recordedPlayer));
+        assertEquals(EXPECTED_FUNCTIONS, extractWithIndex(player));
+    }
+
+    @Test
+    public void extractsTheSameFunctionsAsTheRegexScan() {
+        assertEquals(extractWithRegex(recordedPlayer), extractWithIndex(recordedPlayer));
+        assertEquals(extractWithRegex(player), extractWithIndex(player));
+    }
+
+    @Test
+    public void ignoresBracesInStringsRegexesAndComments() throws IOException {
+        PlayerJsIndex index = PlayerJsIndex.build(readPlayerJs("var a=\"{\";var b=function(c){return /[}]/.test(c)};"
+                + "function d(e){/* } */return '}'+e}// }\nvar f={g:`{`};var h=1/2;var i={j:4/h}"));
+
+        assertEquals("var b=function(c){return /[}]/.test(c)};", index.getFunctionVariable("b"));
+        assertEquals("function d(e){/* } */return '}'+e};", index.getFunction("d"));
+        assertEquals("var f={g:`{`};", index.getObject("f"));
+        assertEquals("var i={j:4/h};", index.getObject("i"));
+        assertNull(index.getObject("a"));
+        assertNull(index.getFunction("b"));
+    }
+
+    @Test
+    public void keepsDefinitionsAfterLineComments() throws IOException {
+        PlayerJsIndex index = PlayerJsIndex.build(readPlayerJs("var a=1;// {\nvar b={c:1};\n"
+                + "var d=a/2;\nfunction e(f){return f}"));
+
+        assertEquals("var b={c:1};", index.getObject("b"));
+        assertEquals("function e(f){return f};", index.getFunction("e"));
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        Benchmarks.assumeEnabled();
+        Benchmarks.Operation regex = new Benchmarks.Operation() {
+            @Override
+            public void run() {
+                extractWithRegex(player);
+            }
+        };
+        Benchmarks.Operation index = new Benchmarks.Operation() {
+            @Override
+            public void run() {
+                extractWithIndex(player);
+            }
+        };
+        Benchmarks.warmUp(WARMUP_ITERATIONS, regex, index);
+
+        Benchmarks.report("player js regex scans", Benchmarks.measure(MEASURED_ITERATIONS, regex));
+        Benchmarks.report("player js single pass", Benchmarks.measure(MEASURED_ITERATIONS, index));
+    }
+
+    /**
+     * @return the source joined the way {@link SignatureDecipherer} reads the player js
+     */
+    private static String readPlayerJs(String source) throws IOException {
+        return SignatureDecipherer.readPlayerJs(new ByteArrayInputStream(source.getBytes("UTF-8")));
+    }
+
+    /**
+     * The way {@link SignatureDecipherer} extracts the functions.
+     */
+    private static String extractWithIndex(String javascriptFile) {
+        Matcher mat = patSignatureDecFunction.matcher(javascriptFile);
+        if (!mat.find())
+            return null;
+        return SignatureDecipherer.collectFunctions(PlayerJsIndex.build(javascriptFile), mat.group(1));
+    }
+
+    /**
+     * The way the functions were extracted before {@link PlayerJsIndex}.
+     */
+    private static String extractWithRegex(String javascriptFile) {
+        Matcher mat = patSignatureDecFunction.matcher(javascriptFile);
+        if (!mat.find())
+            return null;
+        String decipherFunctionName = mat.group(1);
+
+        Pattern patMainVariable = Pattern.compile("(var |\\s|,|;)" + decipherFunctionName.replace("$", "\\$") +
+                "(=function\\((.{1,3})\\)\\{)");
+        String mainDecipherFunct;
+        mat = patMainVariable.matcher(javascriptFile);
+        if (mat.find()) {
+            mainDecipherFunct = "var " + decipherFunctionName + mat.group(2);
+        } else {
+            Pattern patMainFunction = Pattern.compile("function " + decipherFunctionName.replace("$", "\\$") +
+                    "(\\((.{1,3})\\)\\{)");
+            mat = patMainFunction.matcher(javascriptFile);
+            if (!mat.find())
+                return null;
+            mainDecipherFunct = "function " + decipherFunctionName + mat.group(2);
+        }
+
+        int startIndex = mat.end();
+        for (int braces = 1, i = startIndex; i < javascriptFile.length(); i++) {
+            if (braces == 0 && startIndex + 5 < i) {
+                mainDecipherFunct += javascriptFile.substring(startIndex, i) + ";";
+                break;
+            }
+            if (javascriptFile.charAt(i) == '{')
+                braces++;
+            else if (javascriptFile.charAt(i) == '}')
+                braces--;
+        }
+        String decipherFunctions = mainDecipherFunct;
+        mat = patVariableFunction.matcher(mainDecipherFunct);
+        while (mat.find()) {
+            String variableDef = "var " + mat.group(2) + "={";
+            if (decipherFunctions.contains(variableDef)) {
+                continue;
+            }
+            startIndex = javascriptFile.indexOf(variableDef) + variableDef.length();
+            for (int braces = 1, i = startIndex; i < javascriptFile.length(); i++) {
+                if (braces == 0) {
+                    decipherFunctions += variableDef + javascriptFile.substring(startIndex, i) + ";";
+                    break;
+                }
+                if (javascriptFile.charAt(i) == '{')
+                    braces++;
+                else if (javascriptFile.charAt(i) == '}')
+                    braces--;
+            }
+        }
+        mat = patFunction.matcher(mainDecipherFunct);
+        while (mat.find()) {
+            String functionDef = "function " + mat.group(2) + "(";
+            if (decipherFunctions.contains(functionDef)) {
+                continue;
+            }
+            startIndex = javascriptFile.indexOf(functionDef) + functionDef.length();
+            for (int braces = 0, i = startIndex; i < javascriptFile.length(); i++) {
+                if (braces == 0 && startIndex + 5 < i) {
+                    decipherFunctions += functionDef + javascriptFile.substring(startIndex, i) + ";";
+                    break;
+                }
+                if (javascriptFile.charAt(i) == '{')
+                    braces++;
+                else if (javascriptFile.charAt(i) == '}')
+                    braces--;
+            }
+        }
+        return decipherFunctions;
+    }
+
+    /**
+     * @return about <code>size</code> chars of minified code, with braces in strings and
+     * regexes like the player has them
+     */
+    private static String generateCode(int size) {
+        StringBuilder sb = new StringBuilder(size + 256);
+        for (int i = 0; sb.length() < size; i++) {
+            sb.append("var qa").append(i).append("=function(a,b){if(a){return \"}{\"+/[{}]/.test(b)}")
+                    .append("for(var c=0;c<a.length;c++)b=b/2;return b};");
+            sb.append("var qb").append(i).append("={f:function(a){return a+'{'},g:").append(i)
+                    .append(",h:{i:[1,2]}};");
+            sb.append("function qc").append(i).append("(a,b){return qa").append(i)
+                    .append("(a,qb").append(i).append(".f(b))}");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,130 @@
+package at.huber.youtubeExtractor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link HttpTransport} answering from recorded responses in the test resources instead of
+ * the network. Urls without a recording fail like a 404 would.
+ * <p/>
+ * The recordings are read into memory up front, so replaying them costs no disk access.
+ * Urls can also be stalled to simulate a response which does not arrive.
+ */
+final class ReplayTransport extends HttpTransport {
+
+    // url prefix -> recorded response, the first matching prefix wins
+    private final Map<String, byte[]> recordings = new LinkedHashMap<>();
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> stalled = new ArrayList<>();
+    private final CountDownLatch stalledRequest = new CountDownLatch(1);
+    private final AtomicInteger abortedCount = new AtomicInteger();
+
+    /**
+     * @param urlPrefix    the start of the urls which are answered with the recording
+     * @param resourceName the recorded response in the test resources
+     */
+    ReplayTransport record(String urlPrefix, String resourceName) throws IOException {
+        recordings.put(urlPrefix, readResource(resourceName));
+        return this;
+    }
+
+    /**
+     * @param urlPrefix the start of the urls whose response body never arrives, reading it
+     *                  blocks until the stream is aborted
+     */
+    ReplayTransport stall(String urlPrefix) {
+        stalled.add(urlPrefix);
+        return this;
+    }
+
+    /**
+     * @return true if the response of a stalled url was being read within the timeout
+     */
+    boolean awaitStalledRequest(long timeoutMs) throws InterruptedException {
+        return stalledRequest.await(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the number of stalled responses which were aborted
+     */
+    int getAbortedCount() {
+        return abortedCount.get();
+    }
+
+    @Override
+    public InputStream open(String url, int readTimeoutMs) throws IOException {
+        requests.add(url);
+        for (String prefix : stalled) {
+            if (url.startsWith(prefix))
+                return new StalledStream();
+        }
+        for (Map.Entry<String, byte[]> recording : recordings.entrySet()) {
+            if (url.startsWith(recording.getKey()))
+                return new ByteArrayInputStream(recording.getValue());
+        }
+        throw new FileNotFoundException("No recording for " + url);
+    }
+
+    /**
+     * @return the urls requested since the last call, in the order of the requests
+     */
+    List<String> takeRequests() {
+        synchronized (requests) {
+            List<String> taken = new ArrayList<>(requests);
+            requests.clear();
+            return taken;
+        }
+    }
+
+    private final class StalledStream extends InputStream {
+
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        @Override
+        public int read() throws IOException {
+            stalledRequest.countDown();
+            try {
+                closed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException("Stream closed");
+        }
+
+        @Override
+        public void close() {
+            if (closed.getCount() > 0) {
+                abortedCount.incrementAndGet();
+                closed.countDown();
+            }
+        }
+    }
+
+    static byte[] readResource(String resourceName) throws IOException {
+        InputStream in = ReplayTransport.class.getClassLoader().getResourceAsStream(resourceName);
+        if (in == null)
+            throw new FileNotFoundException("Missing fixture " + resourceName);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package at.huber.youtubeExtractor;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the default transport against a local server.
+ */
+public class UrlConnectionTransportTest {
+
+    private static final byte[] BODY = new byte[20000];
+
+    static {
+        for (int i = 0; i < BODY.length; i++) {
+            BODY[i] = (byte) ('a' + i % 26);
+        }
+    }
+
+    private HttpServer server;
+    private String baseUrl;
+    // The client side port of every request, equal ports mean a reused connection
+    private final List<Integer> clientPorts = Collections.synchronizedList(new ArrayList<Integer>());
+    private final List<String> acceptEncodings = Collections.synchronizedList(new ArrayList<String>());
+    private final List<Object[]> finished = Collections.synchronizedList(new ArrayList<Object[]>());
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/plain", new BodyHandler(false));
+        server.createContext("/gzip", new BodyHandler(true));
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        HttpTransport.setRequestListener(new HttpTransport.RequestListener() {
+            @Override
+            public void onRequestFinished(String url, int responseCode, long responseMs, long totalMs, long bytes) {
+                finished.add(new Object[]{url, responseCode, responseMs, totalMs, bytes});
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        HttpTransport.setRequestListener(null);
+        server.stop(0);
+    }
+
+    @Test
+    public void decompressesGzip() throws IOException {
+        assertArrayEquals(BODY, readFully(new UrlConnectionTransport().open(baseUrl + "/gzip")));
+        assertEquals("gzip", acceptEncodings.get(0));
+    }
+
+    @Test
+    public void reportsFinishedRequests() throws IOException {
+        readFully(new UrlConnectionTransport().open(baseUrl + "/plain"));
+
+        assertEquals(1, finished.size());
+        Object[] request = finished.get(0);
+        assertEquals(baseUrl + "/plain", request[0]);
+        assertEquals(200, request[1]);
+        assertTrue((Long) request[2] <= (Long) request[3]);
+        assertEquals((long) BODY.length, request[4]);
+    }
+
+    @Test
+    public void reportsFailedRequests() throws IOException {
+        try {
+            new UrlConnectionTransport().open(baseUrl + "/missing").close();
+            throw new AssertionError("a 404 must fail");
+        } catch (FileNotFoundException expected) {
+            // Expected
+        }
+        assertEquals(1, finished.size());
+        assertEquals(404, finished.get(0)[1]);
+    }
+
+    @Test
+    public void reusesConnectionOfPartiallyReadResponse() throws IOException {
+        UrlConnectionTransport transport = new UrlConnectionTransport();
+        InputStream in = transport.open(baseUrl + "/gzip");
+        // Like the extractor, which stops at the first line it is interested in
+        in.read(new byte[100]);
+        in.close();
+        readFully(transport.open(baseUrl + "/plain"));
+
+        assertEquals(2, clientPorts.size());
+        assertEquals(clientPorts.get(0), clientPorts.get(1));
+        assertEquals(100L, finished.get(0)[4]);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private final class BodyHandler implements HttpHandler {
+
+        private final boolean gzip;
+
+        private BodyHandler(boolean gzip) {
+            this.gzip = gzip;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            acceptEncodings.add(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            byte[] body = BODY;
+            if (gzip) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                GZIPOutputStream out = new GZIPOutputStream(compressed);
+                out.write(BODY);
+                out.close();
+                body = compressed.toByteArray();
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package at.huber.youtubeExtractor;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URLDecoder;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the streaming {@link VideoInfoParser} with the former read-everything-then-regex
+ * approach on a recorded <code>get_video_info</code> response.
+ * <p/>
+ * Runs on the JVM: <code>./gradlew :youtubeExtractor:testDebugUnitTest</code>, the benchmark
+ * only with <code>-Dbenchmark=true</code>, see {@link Benchmarks}.
+ */
+public class VideoInfoParserBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 500;
+    private static final int MEASURED_ITERATIONS = 2000;
+
+    private static final Pattern patTitle = Pattern.compile("title=(.*?)(&|\\z)");
+    private static final Pattern patAuthor = Pattern.compile("author=(.+?)(&|\\z)");
+    private static final Pattern patChannelId = Pattern.compile("ucid=(.+?)(&|\\z)");
+    private static final Pattern patLength = Pattern.compile("length_seconds=(\\d+?)(&|\\z)");
+    private static final Pattern patViewCount = Pattern.compile("view_count=(\\d+?)(&|\\z)");
+    private static final Pattern patHlsvp = Pattern.compile("hlsvp=(.+?)(&|\\z)");
+    private static final Pattern patDashManifest1 = Pattern.compile("dashmpd=(.+?)(&|\\z)");
+    private static final Pattern patItag = Pattern.compile("itag=([0-9]+?)(&|,)");
+    private static final Pattern patUrl = Pattern.compile("url=(.+?)(&|,)");
+
+    private static byte[] response;
+
+    @BeforeClass
+    public static void loadFixture() throws IOException {
+        response = ReplayTransport.readResource("get_video_info.txt");
+    }
+
+    @Test
+    public void parsesRequestedKeys() throws IOException {
+        Map<String, String> videoInfo = parseStreaming();
+
+        assertEquals("Recorded fixture \u2013 song title (Official Audio)", videoInfo.get(VideoInfoParser.KEY_TITLE));
+        assertEquals("Fixture Artist", videoInfo.get(VideoInfoParser.KEY_AUTHOR));
+        assertEquals("UCfixtureChannelId00000", videoInfo.get(VideoInfoParser.KEY_CHANNEL_ID));
+        assertEquals("213", videoInfo.get(VideoInfoParser.KEY_LENGTH));
+        assertEquals("123456789", videoInfo.get(VideoInfoParser.KEY_VIEW_COUNT));
+        assertEquals("False", videoInfo.get(VideoInfoParser.KEY_USE_CIPHER_SIGNATURE));
+        assertTrue(videoInfo.get(VideoInfoParser.KEY_DASH_MPD).startsWith("https://manifest.googlevideo.com/"));
+        assertEquals(null, videoInfo.get(VideoInfoParser.KEY_HLSVP));
+        // Skipped keys are not kept
+        assertEquals(null, videoInfo.get("player_response"));
+
+        List<Map<String, String>> fmts = VideoInfoParser.parseStreams(videoInfo.get(VideoInfoParser.KEY_FMT_STREAM_MAP));
+        List<Map<String, String>> adaptive = VideoInfoParser.parseStreams(videoInfo.get(VideoInfoParser.KEY_ADAPTIVE_FMTS));
+        assertEquals(5, fmts.size());
+        assertEquals(17, adaptive.size());
+        assertEquals("22", fmts.get(0).get("itag"));
+        assertEquals("251", adaptive.get(16).get("itag"));
+        String url = VideoInfoParser.decode(adaptive.get(12).get("url"));
+        assertTrue(url.startsWith("https://r4---sn-hpa7kn7s.googlevideo.com/videoplayback?"));
+        assertTrue(url.contains("&itag=140&"));
+    }
+
+    @Test
+    public void findsTheSameStreamsAsTheRegexScan() throws IOException {
+        Map<String, String> videoInfo = parseStreaming();
+        int streams = VideoInfoParser.parseStreams(videoInfo.get(VideoInfoParser.KEY_FMT_STREAM_MAP)).size()
+                + VideoInfoParser.parseStreams(videoInfo.get(VideoInfoParser.KEY_ADAPTIVE_FMTS)).size();
+        assertEquals(parseWithRegex(), streams);
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        Benchmarks.assumeEnabled();
+        Benchmarks.Operation regex = new Benchmarks.Operation() {
+            @Override
+            public void run() throws IOException {
+                parseWithRegex();
+            }
+        };
+        Benchmarks.Operation streaming = new Benchmarks.Operation() {
+            @Override
+            public void run() throws IOException {
+                parseStreamingWithStreams();
+            }
+        };
+        Benchmarks.warmUp(WARMUP_ITERATIONS, regex, streaming);
+
+        Benchmarks.report("get_video_info regex scan", Benchmarks.measure(MEASURED_ITERATIONS, regex));
+        Benchmarks.report("get_video_info streaming pass", Benchmarks.measure(MEASURED_ITERATIONS, streaming));
+    }
+
+    private static Map<String, String> parseStreaming() throws IOException {
+        InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(response), "UTF-8");
+        try {
+            return VideoInfoParser.parse(reader, VideoInfoParser.VIDEO_INFO_KEYS);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static int parseStreamingWithStreams() throws IOException {
+        Map<String, String> videoInfo = parseStreaming();
+        int count = 0;
+        for (String key : new String[]{VideoInfoParser.KEY_FMT_STREAM_MAP, VideoInfoParser.KEY_ADAPTIVE_FMTS}) {
+            for (Map<String, String> stream : VideoInfoParser.parseStreams(videoInfo.get(key))) {
+                if (stream.get("itag") != null && VideoInfoParser.decode(stream.get("url")) != null)
+                    count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The way the response was parsed before {@link VideoInfoParser}.
+     *
+     * @return the number of streams found
+     */
+    private static int parseWithRegex() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(response), "UTF-8"));
+        String streamMap;
+        try {
+            streamMap = reader.readLine();
+        } finally {
+            reader.close();
+        }
+
+        Matcher mat = patTitle.matcher(streamMap);
+        if (mat.find())
+            URLDecoder.decode(mat.group(1), "UTF-8");
+        patHlsvp.matcher(streamMap).find();
+        mat = patAuthor.matcher(streamMap);
+        if (mat.find())
+            URLDecoder.decode(mat.group(1), "UTF-8");
+        mat = patChannelId.matcher(streamMap);
+        if (mat.find())
+            mat.group(1);
+        mat = patLength.matcher(streamMap);
+        if (mat.find())
+            Long.parseLong(mat.group(1));
+        mat = patViewCount.matcher(streamMap);
+        if (mat.find())
+            Long.parseLong(mat.group(1));
+
+        if (!streamMap.contains("use_cipher_signature=False"))
+            throw new IllegalStateException("fixture must not be enciphered");
+        mat = patDashManifest1.matcher(streamMap);
+        if (mat.find())
+            URLDecoder.decode(mat.group(1), "UTF-8");
+        streamMap = URLDecoder.decode(streamMap, "UTF-8");
+
+        int count = 0;
+        String[] streams = streamMap.split(",|url_encoded_fmt_stream_map|&adaptive_fmts=");
+        for (String encStream : streams) {
+            encStream = encStream + ",";
+            if (!encStream.contains("itag%3D"))
+                continue;
+            String stream = URLDecoder.decode(encStream, "UTF-8");
+            mat = patItag.matcher(stream);
+            if (!mat.find())
+                continue;
+            mat = patUrl.matcher(encStream);
+            if (mat.find()) {
+                URLDecoder.decode(mat.group(1), "UTF-8");
+                count++;
+            }
+        }
+        return count;
+    }
+}
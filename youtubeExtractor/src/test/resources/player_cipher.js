@@ -0,0 +1,7 @@
+var _yt_player={};(function(g){var window=this;
+var Yy={ab:function(a,b){a.splice(0,b)},cd:function(a){a.reverse()},
+ef:function(a,b){var c=a[0];a[0]=a[b%a.length];a[b%a.length]=c}};
+var Xx=function(a){a=a.split("");Yy.ef(a,7);Yy.cd(a,31);Yy.ab(a,2);Yy.ef(a,45);Yy.cd(a,8);Yy.ab(a,1);return a.join("")};
+var Zq=function(a,b){this.j=a;this.A=b||{}};Zq.prototype.set=function(a,b){this.A[a]=b};
+var Wl=function(a,b){var c=new Zq(a.url);b.s&&c.set("signature",Xx(b.s));b.sig&&c.set("signature",b.sig);return c};
+g.Wl=Wl;})(_yt_player);